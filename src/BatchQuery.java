@@ -0,0 +1,106 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class BatchQuery implements InputQuery {
+
+	private final BayesianNetwork BTN;
+	private final List<Variable> Targets;//** Variables whose whole distribution is asked
+	private final List<Variable> ObservedVars;
+	private final List<String> Evidence;
+	private final String Type;
+	/**
+	 * BatchQuery Constructor
+	 * @param BNTK
+	 * @param targets
+	 * @param observedVars
+	 * @param evidence
+	 * @param type
+	 */
+	public BatchQuery(BayesianNetwork BNTK,List<Variable> targets,List<Variable> observedVars,
+			List<String> evidence, String type) {
+		BTN=BNTK;
+		Targets = new ArrayList<>(targets);
+		this.ObservedVars = new ArrayList<>(observedVars);
+		this.Evidence = new ArrayList<>(evidence);
+		Type = type;
+	}
+	/**
+	 * With type 4 the junction tree is calibrated once for every target, with the other types each target is
+	 * a query of its own: nothing is shared between the targets but the posteriors of cache.
+	 * @param operationsCount in first cell counts summarizing operations 
+	 * and the second for counting the multiplying operations
+	 * @param cache posteriors of the previous queries, if null every target is computed
+	 * @return for each target, the probability of each of its values rounded to 5 digits
+	 */
+	public List<double[]> process(int[] operationsCount, QueryCache cache) {
+		List<double[]> ans = new ArrayList<>(Targets.size());
+		if(Type.equals("4")) {
+			Map<Variable,double[]> posteriors = BTN.posteriors(Targets, ObservedVars, Evidence, operationsCount);
+			for(Variable target : Targets) {
+				double[] posterior = posteriors.get(target);
+				double[] probs = new double[posterior.length];
+				for (int i = 0; i < probs.length; i++)
+					probs[i] = Math.round(posterior[i]*100000.0)/100000.0;
+				ans.add(probs);
+			}
+			return ans;
+		}
+		for(Variable target : Targets) {
+			Query query = new Query(BTN, target, target.getValues().get(0), ObservedVars, Evidence, Type);
+			ans.add(query.distribution(operationsCount, cache));
+		}
+		return ans;
+	}
+	/**
+	 * @param cache
+	 * @return each target with the probabilities of its values, separated by ';', followed by the number of
+	 * additions and multiplications, the probabilities are NaN (and the error is printed to the error stream)
+	 * if a sampling algorithm weighted every sample by 0
+	 */
+	public String answer(QueryCache cache) {
+		int[] operationsCount = new int[2];
+		QueryMetrics metrics = QueryMetrics.begin(this, Type);
+		List<double[]> probs;
+		try {
+			probs = process(operationsCount, cache);
+		} catch (ArithmeticException e) {
+			System.err.println(this + ": " + e.getMessage());
+			probs = new ArrayList<>(Targets.size());
+			for(Variable target : Targets) {
+				double[] unknown = new double[target.numOfValues()];
+				Arrays.fill(unknown, Double.NaN);
+				probs.add(unknown);
+			}
+		} finally {
+			if(metrics != null)
+				metrics.end(operationsCount);
+		}
+		String ans = "";
+		for (int t = 0; t < Targets.size(); t++) {
+			ans += Targets.get(t).getName() + ":";
+			double[] probsOfTarget = probs.get(t);
+			for (int i = 0; i < probsOfTarget.length; i++)
+				ans += (i == 0? "" : ",") + probsOfTarget[i];
+			ans += ";";
+		}
+		return ans+operationsCount[0]+","+operationsCount[1];
+	}
+	/**
+	 * @return batch query as String.
+	 */
+	public String toString() {
+		String ans = new String("P(");
+		for (int t = 0; t < Targets.size(); t++)
+			ans += (t == 0? "" : ",") + Targets.get(t).getName();
+		ans += "|";
+		for (int i = 0; i < ObservedVars.size(); i++) {
+			ans+=ObservedVars.get(i).getName() +"="+ Evidence.get(i)+",";
+		}
+		if(!ObservedVars.isEmpty())
+			ans = ans.substring(0, ans.length()-1);
+		ans += "),"+Type;
+		return ans;
+	}
+}
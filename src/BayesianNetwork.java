@@ -1,213 +1,417 @@
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
-public class BayesianNetwork {
-
-	private List<Variable> varsNetwork;//** List of the network variables
-	/**
-	 * Initialize empty network
-	 */
-	public BayesianNetwork() {
-		varsNetwork = new ArrayList<>();
-	}
-	
-	/**
-	 * Deep copy of the Bayesian network
-	 * @param network
-	 */
-	public BayesianNetwork(BayesianNetwork network) {
-		this.varsNetwork = new ArrayList<>(network.varsNetwork);
-	}
-
-	/**
-	 * 
-	 * @return a copy of the Bayesian network
-	 */
-	public List<Variable> getCopyOfBNTK(){
-		return new ArrayList<>(varsNetwork);
-	}
-	/**
-	 * Adds the variable to the network
-	 * @param var
-	 */
-	public void AddVariable(Variable var) {
-		varsNetwork.add(var);
-	}
-	/**
-	 * @param i
-	 * @return returns variable at that index
-	 */
-	public Variable varAt(int i) {
-		if(i<varsNetwork.size())
-			return varsNetwork.get(i);
-		return null;
-	}
-	/**
-	 * @param var
-	 * @return returns index of variable in network
-	 */
-	public int indexOf(Variable var) {
-		return varsNetwork.indexOf(var);
-	}
-	/**
-	 * @return size if network (number of variables)
-	 */
-	public int size() {
-		return varsNetwork.size();
-	}
-	/**
-	 * return the variable that goes by that name if in the network, otherwise null
-	 * @param name of the variable
-	 * @return
-	 */
-	public Variable getVarByName(String name) {
-		for(Variable var:varsNetwork) {
-			if(var.getName().equals(name))
-				return var;
-		}
-		return null;
-	}
-	/**
-	 * Returns a string describing the network
-	 */
-	public String toString() {
-		return varsNetwork.toString();
-	}
-
-	/**
-	 * 
-	 * @param var
-	 * @param observedVar
-	 * @return a new network with eliminated irrelevant variables.
-	 */
-	public BayesianNetwork eliminateVariables(Variable var, List<Variable> observedVar) {
-		BayesianNetwork ans = new BayesianNetwork();
-		List<String> namesOfVarsAndThierParents = new ArrayList<>();
-		List<Variable> keepVars = new ArrayList<>(observedVar);
-		int start = this.varsNetwork.indexOf(var),depth = var.depth();
-		for(Variable v:observedVar) {
-			int tmpD = v.depth();
-			if(tmpD > depth) {
-				depth = tmpD;
-				start = this.varsNetwork.indexOf(v);
-			}
-			else if(tmpD == depth)
-				start = Math.max(start, this.varsNetwork.indexOf(v));
-		}
-		keepVars.add(var);
-		for(int i = start; i >=0; i--) {
-			Variable v = this.varsNetwork.get(i);
-			namesOfVarsAndThierParents.add(v.getName());
-			getNamesOfParentsOf(v,namesOfVarsAndThierParents);
-		}
-		/*This way is more efficient, but discards a lot and with no 
-		 * regards of order keeping only the very relevant variables*/
-		/*keepVars.add(var);
-		getNamesOfParentsOf(var, namesOfVarsAndThierParents);
-		for(Variable v:observedVar) {
-			keepVars.add(v);
-			getNamesOfParentsOf(v, namesOfVarsAndThierParents);
-		}*/
-		for(Variable v : varsNetwork) {
-			if(namesOfVarsAndThierParents.contains(v.getName()))
-				ans.AddVariable(v);
-		}
-		return ans;
-	}
-	/**
-	 * Adds the variable and the variable parents to the network
-	 * @param var
-	 * @param nameOfVarParents 
-	 */
-	private void getNamesOfParentsOf(Variable var, List<String> namesOfVarsAndThierParents) {
-		List<Variable> paretns = var.getParents();
-		if(paretns!=null)
-			for(Variable par : paretns) {
-				String Name = par.getName();
-				if(!namesOfVarsAndThierParents.contains(Name)) {
-					namesOfVarsAndThierParents.add(Name);
-					getNamesOfParentsOf(par, namesOfVarsAndThierParents);
-				}
-			}
-	}
-	/**
-	 * Reorders the network to the best possible sequence
-	 * @param var
-	 * @param observedVar
-	 * @return
-	 */
-	public BayesianNetwork bestOrderOfVars(Variable var, List<Variable> observedVar) {
-		BayesianNetwork ans = new BayesianNetwork();
-		List<Integer> listOfDepths = new ArrayList<>();
-		int obeservedVarsMaxDepth = var.depth();
-		for(Variable v : varsNetwork) {
-			int vDepth = v.depth();
-			listOfDepths.add(vDepth);
-			if(observedVar.contains(v)) {
-				obeservedVarsMaxDepth = Math.max(obeservedVarsMaxDepth, vDepth);
-			}
-		}
-		BayesianNetwork tmp = new BayesianNetwork(this);
-		for(int i = 0; i < tmp.varsNetwork.size();i++) {
-			Variable v = tmp.varAt(i);
-			int depthV = v.depth();
-			if(depthV > obeservedVarsMaxDepth) {
-				tmp.varsNetwork.remove(i);
-				listOfDepths.remove(i);
-			}
-		}
-		int depth = 1, start = 0, end = 0;
-		observedVar.add(var);
-		for(; end < listOfDepths.size(); end++) {
-			int depthOfV = listOfDepths.get(end);
-			if(depth == depthOfV){
-				end--;
-				ans.bestOrderFromTo(tmp,start,end,depthOfV-1,obeservedVarsMaxDepth,observedVar);
-				start = end+1;
-				depth++;
-			}
-			else if(end == listOfDepths.size() -1) {
-				ans.bestOrderFromTo(tmp,start,end,depthOfV-1,obeservedVarsMaxDepth,observedVar);
-				break;
-			}
-		}
-		observedVar.remove(observedVar.size()-1);
-		for(Variable v : varsNetwork)
-			if(!ans.varsNetwork.contains(v))
-				ans.varsNetwork.add(v);
-		return ans;
-	}
-
-	/**
-	 * Adds the variable and the variable parents to the network
-	 * @param OriginalNet
-	 * @param start
-	 * @param end
-	 * @param currentDepth
-	 * @param obeservedVarsMaxDepth
-	 * @param observedVar
-	 */
-	private void bestOrderFromTo(BayesianNetwork OriginalNet, int start, int end, int currentDepth, 
-			int obeservedVarsMaxDepth, List<Variable> observedVar) {
-		List<Variable> listOfNumOfValues = new ArrayList<>();
-		for (int i = start; i <= end; i++) {
-			Variable v = OriginalNet.varsNetwork.get(i);
-			listOfNumOfValues.add(/*Collections.binarySearch(listOfNumOfValues, v)+1,*/v);
-		}
-		Collections.sort(listOfNumOfValues);
-		if(currentDepth < obeservedVarsMaxDepth) {
-			for(Variable v : listOfNumOfValues) {
-				this.varsNetwork.add(v);
-			}
-		}
-		else {
-			for(Variable v : listOfNumOfValues) {
-				if(observedVar.contains(v))
-					this.varsNetwork.add(v);
-			}
-		}
-
-	}
-
-}
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BayesianNetwork {
+
+	private List<Variable> varsNetwork;//** List of the network variables
+	private Map<String,Variable> varsByName;//** Variables of the network by name
+	private Variable[] varsById;//** Variables of the network by id, null for ids of variables not in it
+	private volatile NetworkStructure structure;//** Cached structure of the network, null if not computed since last change
+	private volatile CompiledNetwork model;//** Compiled variables of the network, null if not compiled
+	private volatile JunctionTree junctionTree;//** Junction tree of the network, null if not built since last change
+	/**
+	 * Initialize empty network
+	 */
+	public BayesianNetwork() {
+		varsNetwork = new ArrayList<>();
+		varsByName = new HashMap<>();
+		varsById = new Variable[0];
+	}
+	
+	/**
+	 * Deep copy of the Bayesian network
+	 * @param network
+	 */
+	public BayesianNetwork(BayesianNetwork network) {
+		this.varsNetwork = new ArrayList<>(network.varsNetwork);
+		this.varsByName = new HashMap<>(network.varsByName);
+		this.varsById = network.varsById.clone();
+	}
+
+	/**
+	 * 
+	 * @return a copy of the Bayesian network
+	 */
+	public List<Variable> getCopyOfBNTK(){
+		return new ArrayList<>(varsNetwork);
+	}
+	/**
+	 * Adds the variable to the network, a variable that is not in any network yet gets its index as id
+	 * @param var
+	 */
+	public void AddVariable(Variable var) {
+		if(var.getId() == -1)
+			var.setId(varsNetwork.size());
+		varsNetwork.add(var);
+		varsByName.put(var.getName(), var);
+		if(var.getId() >= varsById.length)
+			varsById = Arrays.copyOf(varsById, Math.max(var.getId() + 1, 2*varsById.length));
+		varsById[var.getId()] = var;
+		structure = null;
+		junctionTree = null;
+		if(model != null && !model.contains(var.getId()))
+			model = null;
+	}
+	/**
+	 * Drops the cached structure, to be called when the parents of a variable in the network change.
+	 */
+	public void structureChanged() {
+		structure = null;
+		junctionTree = null;
+	}
+	/**
+	 * 
+	 * @return the structure of the network (topological order, depths, parents, children and ancestors),
+	 * computed once and kept until the network changes
+	 */
+	public NetworkStructure getStructure() {
+		NetworkStructure ans = structure;
+		if(ans == null) {
+			ans = new NetworkStructure(varsNetwork);
+			structure = ans;
+		}
+		return ans;
+	}
+	/**
+	 * Freezes every variable of the network and compiles them into an immutable {@link CompiledNetwork},
+	 * which every inference algorithm runs against.
+	 * @return the compiled network
+	 */
+	public CompiledNetwork compile() {
+		for(Variable v : varsNetwork)
+			v.freeze();
+		CompiledNetwork ans = new CompiledNetwork(this);
+		model = ans;
+		return ans;
+	}
+	/**
+	 * Freezes every variable of the network and runs the inference against compiled, already compiled from
+	 * the same variables (read from a network file).
+	 * @param compiled
+	 */
+	void compile(CompiledNetwork compiled) {
+		for(Variable v : varsNetwork)
+			v.freeze();
+		model = compiled;
+	}
+	/**
+	 * 
+	 * @return the compiled network, compiling the network if not compiled yet
+	 */
+	public CompiledNetwork getModel() {
+		CompiledNetwork ans = model;
+		return ans == null? compile() : ans;
+	}
+	/**
+	 * 
+	 * @return the junction tree of the network, built once and kept until the network changes
+	 */
+	public JunctionTree getJunctionTree() {
+		JunctionTree ans = junctionTree;
+		if(ans == null) {
+			ans = new JunctionTree(this);
+			junctionTree = ans;
+		}
+		return ans;
+	}
+	/**
+	 * 
+	 * @return the junction tree of the network if it was built since the last change, otherwise null
+	 */
+	public JunctionTree getJunctionTreeIfBuilt() {
+		return junctionTree;
+	}
+	/**
+	 * Calibrates the junction tree of the network for the evidence once, and reads the posterior of every
+	 * target from it.
+	 * @param targets
+	 * @param observedVars
+	 * @param evidence evidence of observed variable
+	 * @param operationsC
+	 * @return the distribution of each target given the evidence, in the order of its values
+	 */
+	public Map<Variable,double[]> posteriors(List<Variable> targets, List<Variable> observedVars, List<String> evidence,
+			int[] operationsC) {
+		QueryMetrics metrics = QueryMetrics.current();
+		long start = metrics == null? 0 : System.nanoTime();
+		JunctionTree tree = getJunctionTree();
+		if(metrics != null)
+			metrics.time(QueryMetrics.Phase.ORDERING, start);
+		JunctionTree.Calibration calibration = tree.calibrate(evidenceOf(observedVars, evidence), operationsC);
+		Map<Variable,double[]> ans = new LinkedHashMap<>();
+		for(Variable target : targets) {
+			double[] posterior = calibration.marginalOf(target.getId(), operationsC);
+			double sum = 0;
+			for(double prob : posterior)
+				sum += prob;
+			for (int i = 0; i < posterior.length; i++)
+				posterior[i] /= sum;
+			ans.put(target, posterior);
+		}
+		return ans;
+	}
+	/**
+	 * A sub-network of this network has the same variables, so it shares the compiled network.
+	 * @param subNetwork
+	 * @return subNetwork
+	 */
+	private BayesianNetwork withModelOf(BayesianNetwork subNetwork) {
+		subNetwork.model = model;
+		return subNetwork;
+	}
+	/**
+	 * 
+	 * @param var
+	 * @return depth of var in the network
+	 */
+	public int depthOf(Variable var) {
+		NetworkStructure struct = getStructure();
+		int indx = struct.indexOf(var);
+		return indx == -1? var.depth() : struct.depthAt(indx);
+	}
+	/**
+	 * @param i
+	 * @return returns variable at that index
+	 */
+	public Variable varAt(int i) {
+		if(i<varsNetwork.size())
+			return varsNetwork.get(i);
+		return null;
+	}
+	/**
+	 * @param id
+	 * @return returns the variable with that id if in the network, otherwise null
+	 */
+	public Variable varById(int id) {
+		if(id < varsById.length)
+			return varsById[id];
+		return null;
+	}
+	/**
+	 * @param var
+	 * @return returns index of variable in network
+	 */
+	public int indexOf(Variable var) {
+		return getStructure().indexOf(var);
+	}
+	/**
+	 * @return size if network (number of variables)
+	 */
+	public int size() {
+		return varsNetwork.size();
+	}
+	/**
+	 * return the variable that goes by that name if in the network, otherwise null
+	 * @param name of the variable
+	 * @return
+	 */
+	public Variable getVarByName(String name) {
+		return varsByName.get(name);
+	}
+	/**
+	 * 
+	 * @param observedVar
+	 * @param evidence value of each observed variable
+	 * @return the index of the value of each observed variable by id, -1 for variables that are not observed
+	 */
+	public int[] evidenceOf(List<Variable> observedVar, List<String> evidence) {
+		int[] ans = new int[getStructure().idBound()];
+		Arrays.fill(ans, -1);
+		for (int i = 0; i < observedVar.size(); i++) {
+			Variable v = observedVar.get(i);
+			ans[v.getId()] = v.getValues().indexOf(evidence.get(i));
+		}
+		return ans;
+	}
+	/**
+	 * Returns a string describing the network
+	 */
+	public String toString() {
+		return varsNetwork.toString();
+	}
+
+	/**
+	 * 
+	 * @param var
+	 * @param observedVar
+	 * @return a new network with eliminated irrelevant variables.
+	 */
+	public BayesianNetwork eliminateVariables(Variable var, List<Variable> observedVar) {
+		BayesianNetwork ans = new BayesianNetwork();
+		NetworkStructure struct = getStructure();
+		BitSet varsAndThierParents = new BitSet();
+		int start = struct.indexOf(var),depth = depthOf(var);
+		for(Variable v:observedVar) {
+			int tmpD = depthOf(v);
+			if(tmpD > depth) {
+				depth = tmpD;
+				start = struct.indexOf(v);
+			}
+			else if(tmpD == depth)
+				start = Math.max(start, struct.indexOf(v));
+		}
+		for(int i = start; i >=0; i--) {
+			varsAndThierParents.set(i);
+			varsAndThierParents.or(struct.ancestorsAt(i));
+		}
+		/*This way is more efficient, but discards a lot and with no 
+		 * regards of order keeping only the very relevant variables*/
+		/*keepVars.add(var);
+		getNamesOfParentsOf(var, namesOfVarsAndThierParents);
+		for(Variable v:observedVar) {
+			keepVars.add(v);
+			getNamesOfParentsOf(v, namesOfVarsAndThierParents);
+		}*/
+		for(int i = 0; i < varsNetwork.size(); i++) {
+			if(varsAndThierParents.get(i))
+				ans.AddVariable(varsNetwork.get(i));
+		}
+		return withModelOf(ans);
+	}
+	/**
+	 * Keeps only the variables whose CPT is needed to answer the query, found by the Bayes-ball algorithm:
+	 * a ball is sent from the query variable, passing from a child to its parents and children through hidden
+	 * variables, and from a parent to the parents of observed variables and to the children of hidden ones.
+	 * The CPTs needed are those of the variables the ball left upwards (to their parents) or the query variable.
+	 * @param var
+	 * @param observedVar
+	 * @return the minimal sub-network and the removed variables
+	 */
+	public PruningResult prune(Variable var, List<Variable> observedVar) {
+		int size = varsNetwork.size();
+		boolean[] observed = new boolean[size];
+		for(Variable v : observedVar) {
+			int indx = indexOf(v);
+			if(indx != -1)
+				observed[indx] = true;
+		}
+		NetworkStructure struct = getStructure();
+		boolean[] top = new boolean[size], bottom = new boolean[size];
+		//** Scheduled visits, 2*i+1 if i is visited from one of its children, 2*i if from one of its parents
+		Deque<Integer> schedule = new ArrayDeque<>();
+		int query = indexOf(var);
+		schedule.add(2*query+1);
+		while(!schedule.isEmpty()) {
+			int visit = schedule.poll(), i = visit/2;
+			boolean fromChild = visit%2 == 1;
+			if(fromChild && !observed[i] || !fromChild && observed[i]) {
+				if(!top[i]) {
+					top[i] = true;
+					for(int p : struct.parentsAt(i))
+						schedule.add(2*p+1);
+				}
+			}
+			if(!observed[i] && !bottom[i]) {
+				bottom[i] = true;
+				for(int c : struct.childrenAt(i))
+					schedule.add(2*c);
+			}
+		}
+		BitSet ancestral = struct.ancestorsAt(query);
+		ancestral.set(query);
+		for (int i = 0; i < size; i++)
+			if(observed[i]) {
+				ancestral.set(i);
+				ancestral.or(struct.ancestorsAt(i));
+			}
+		BayesianNetwork relevant = new BayesianNetwork();
+		List<Variable> barren = new ArrayList<>(), separated = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			Variable v = varsNetwork.get(i);
+			if(top[i] || i == query)
+				relevant.AddVariable(v);
+			else if(!ancestral.get(i))
+				barren.add(v);
+			else
+				separated.add(v);
+		}
+		return new PruningResult(withModelOf(relevant), barren, separated);
+	}
+	/**
+	 * Reorders the network to the best possible sequence
+	 * @param var
+	 * @param observedVar
+	 * @return
+	 */
+	public BayesianNetwork bestOrderOfVars(Variable var, List<Variable> observedVar) {
+		BayesianNetwork ans = new BayesianNetwork();
+		List<Integer> listOfDepths = new ArrayList<>();
+		int obeservedVarsMaxDepth = depthOf(var);
+		for(Variable v : varsNetwork) {
+			int vDepth = depthOf(v);
+			listOfDepths.add(vDepth);
+			if(observedVar.contains(v)) {
+				obeservedVarsMaxDepth = Math.max(obeservedVarsMaxDepth, vDepth);
+			}
+		}
+		BayesianNetwork tmp = new BayesianNetwork(this);
+		for(int i = 0; i < tmp.varsNetwork.size();i++) {
+			Variable v = tmp.varAt(i);
+			int depthV = depthOf(v);
+			if(depthV > obeservedVarsMaxDepth) {
+				tmp.varsNetwork.remove(i);
+				listOfDepths.remove(i);
+			}
+		}
+		int depth = 1, start = 0, end = 0;
+		List<Variable> observedAndQueryVar = new ArrayList<>(observedVar);
+		observedAndQueryVar.add(var);
+		for(; end < listOfDepths.size(); end++) {
+			int depthOfV = listOfDepths.get(end);
+			if(depth == depthOfV){
+				end--;
+				ans.bestOrderFromTo(tmp,start,end,depthOfV-1,obeservedVarsMaxDepth,observedAndQueryVar);
+				start = end+1;
+				depth++;
+			}
+			else if(end == listOfDepths.size() -1) {
+				ans.bestOrderFromTo(tmp,start,end,depthOfV-1,obeservedVarsMaxDepth,observedAndQueryVar);
+				break;
+			}
+		}
+		for(Variable v : varsNetwork)
+			if(ans.getVarByName(v.getName()) == null)
+				ans.AddVariable(v);
+		return withModelOf(ans);
+	}
+
+	/**
+	 * Adds the variable and the variable parents to the network
+	 * @param OriginalNet
+	 * @param start
+	 * @param end
+	 * @param currentDepth
+	 * @param obeservedVarsMaxDepth
+	 * @param observedVar
+	 */
+	private void bestOrderFromTo(BayesianNetwork OriginalNet, int start, int end, int currentDepth, 
+			int obeservedVarsMaxDepth, List<Variable> observedVar) {
+		List<Variable> listOfNumOfValues = new ArrayList<>();
+		for (int i = start; i <= end; i++) {
+			Variable v = OriginalNet.varsNetwork.get(i);
+			listOfNumOfValues.add(/*Collections.binarySearch(listOfNumOfValues, v)+1,*/v);
+		}
+		Collections.sort(listOfNumOfValues);
+		if(currentDepth < obeservedVarsMaxDepth) {
+			for(Variable v : listOfNumOfValues) {
+				this.AddVariable(v);
+			}
+		}
+		else {
+			for(Variable v : listOfNumOfValues) {
+				if(observedVar.contains(v))
+					this.AddVariable(v);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,281 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the inference algorithms on the input files and on synthetic networks, and the CPTX primitives
+ * they are built of. Every measured operation runs alone on the calling thread, after warm-up rounds that
+ * let the JIT compile it, and its latency and allocated bytes are taken around it. For each benchmark the
+ * throughput, the percentiles of the latency and the bytes allocated per operation are printed.
+ */
+public class Benchmark {
+
+	private static volatile double sink;//** Results of the measured operations, so the JIT can not drop them
+
+	private final int warmup;//** Rounds run before the measured ones
+	private final int iterations;//** Measured rounds, every round runs each operation once
+	private final ThreadMXBean threads;//** Allocated bytes of the calling thread, if the JVM counts them
+
+	/**
+	 * @param warmup rounds run before the measured ones
+	 * @param iterations measured rounds, every round runs each operation once
+	 */
+	public Benchmark(int warmup, int iterations) {
+		this.warmup = warmup;
+		this.iterations = iterations;
+		threads = ManagementFactory.getThreadMXBean();
+	}
+
+	/**
+	 * Operation of a benchmark.
+	 */
+	private interface Operation {
+		/**
+		 *
+		 * @param operationsC additions and multiplications of the operation
+		 * @return a result of the operation
+		 */
+		double run(int[] operationsC);
+	}
+
+	/**
+	 * Results of a benchmark.
+	 */
+	public static class Result {
+
+		private final String name;//** Name of the benchmark
+		private final long[] latencies;//** Nanoseconds of every measured operation, sorted
+		private final long allocatedBytes;//** Bytes allocated by the measured operations, -1 if not counted
+
+		private Result(String name, long[] latencies, long allocatedBytes) {
+			this.name = name;
+			this.latencies = latencies;
+			this.allocatedBytes = allocatedBytes;
+			Arrays.sort(latencies);
+		}
+
+		/**
+		 *
+		 * @return operations per second of the measured rounds
+		 */
+		public double throughput() {
+			long total = 0;
+			for(long latency : latencies)
+				total += latency;
+			return total == 0? 0 : latencies.length * 1e9 / total;
+		}
+		/**
+		 *
+		 * @param p between 0 and 1
+		 * @return latency in nanoseconds that p of the operations did not exceed
+		 */
+		public long percentile(double p) {
+			if(latencies.length == 0)
+				return 0;
+			int rank = (int) Math.ceil(p * latencies.length);
+			return latencies[Math.max(0, rank - 1)];
+		}
+		/**
+		 *
+		 * @return bytes allocated per operation, -1 if the JVM does not count them
+		 */
+		public long allocationRate() {
+			return allocatedBytes == -1 || latencies.length == 0? -1 : allocatedBytes / latencies.length;
+		}
+		/**
+		 * @return throughput, latency percentiles in microseconds and allocated bytes per operation
+		 */
+		public String toString() {
+			return String.format("%-28s %12.1f %10.1f %10.1f %10.1f %10.1f %12s", name, throughput(),
+					percentile(0.5) / 1e3, percentile(0.9) / 1e3, percentile(0.99) / 1e3, percentile(1) / 1e3,
+					allocationRate() == -1? "n/a" : Long.toString(allocationRate()));
+		}
+	}
+
+	/**
+	 * Runs the operations in warm-up and then measured rounds.
+	 * @param name
+	 * @param operations
+	 * @return the results of the measured rounds
+	 */
+	private Result measure(String name, List<Operation> operations) {
+		int[] operationsC = new int[2];
+		double result = 0;
+		for (int round = 0; round < warmup; round++)
+			for(Operation operation : operations)
+				result += operation.run(operationsC);
+		long[] latencies = new long[iterations * operations.size()];
+		long allocated = 0;
+		int i = 0;
+		for (int round = 0; round < iterations; round++) {
+			for(Operation operation : operations) {
+				long bytes = allocatedBytes();
+				long start = System.nanoTime();
+				result += operation.run(operationsC);
+				latencies[i++] = System.nanoTime() - start;
+				allocated = bytes == -1 || allocated == -1? -1 : allocated + allocatedBytes() - bytes;
+			}
+		}
+		sink = result;
+		return new Result(name, latencies, allocated);
+	}
+	/**
+	 *
+	 * @return bytes allocated so far by the calling thread, -1 if the JVM does not count them
+	 */
+	private long allocatedBytes() {
+		if(!(threads instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+		return counter.isThreadAllocatedMemoryEnabled()?
+				counter.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @param queries
+	 * @param type
+	 * @return the results of answering every query by the algorithm of type
+	 */
+	public Result measureQueries(String name, List<Query> queries, String type) {
+		List<Operation> operations = new ArrayList<>(queries.size());
+		for(Query query : queries) {
+			Query typed = query.withType(type);
+			operations.add(operationsC -> typed.process(operationsC));
+		}
+		return measure(name + " type " + type, operations);
+	}
+	/**
+	 * Products of the CPTX of each variable and the CPTX of the next variable, summing out of the first
+	 * variable of the products, and copies of the products (which summing out needs, as it changes the CPTX).
+	 * @param name
+	 * @param network
+	 * @return the results of the three primitives
+	 */
+	public List<Result> measurePrimitives(String name, BayesianNetwork network) {
+		CompiledNetwork model = network.getModel();
+		int[] noEvidence = new int[model.idBound()];
+		Arrays.fill(noEvidence, -1);
+		List<CPTX> factors = new ArrayList<>(network.size());
+		for (int i = 0; i < network.size(); i++)
+			factors.add(new CPTX(model, network.varAt(i).getId(), noEvidence));
+		List<Operation> products = new ArrayList<>(), copies = new ArrayList<>(), sums = new ArrayList<>();
+		for (int i = 0; i + 1 < factors.size(); i++) {
+			CPTX a = factors.get(i), b = factors.get(i + 1);
+			CPTX joined = a.CartasianProduct(b, new int[2]);
+			int first = network.varAt(i).getId();
+			products.add(operationsC -> a.CartasianProduct(b, operationsC).getTable().length);
+			copies.add(operationsC -> joined.copy().getTable().length);
+			sums.add(operationsC -> {
+				CPTX reduced = joined.copy();
+				reduced.sumOut(first, operationsC);
+				return reduced.getTable().length;
+			});
+		}
+		List<Result> ans = new ArrayList<>(3);
+		ans.add(measure(name + " product", products));
+		ans.add(measure(name + " copy", copies));
+		ans.add(measure(name + " copy+sumOut", sums));
+		return ans;
+	}
+
+	/**
+	 *
+	 * @param path
+	 * @return the single value queries of the input file
+	 * @throws IOException
+	 */
+	private static List<Query> queriesOf(File path) throws IOException {
+		List<Query> ans = new ArrayList<>();
+		try (InputParser parser = InputParser.of(path.toPath())) {
+			BayesianNetwork BNT = parser.parseNetwork();
+			for(InputQuery query : parser.parseQueries(BNT))
+				if(query instanceof Query)
+					ans.add((Query) query);
+		}
+		return ans;
+	}
+	/**
+	 * Prints the results of the benchmarks.
+	 * @param args "-types 1,2,3,4" algorithms to measure, "-fixtures DIR" folder of the input files
+	 * (input*.txt, "none" to skip them), "-warmup N" and "-iterations N" rounds, "-size N" variables of the
+	 * synthetic networks, "-card N" values of their variables, "-queries N" random queries of each one with
+	 * "-evidence N" observed variables, "-seed S" of the networks and queries, and "-factor-cache N" as in ex1.
+	 * Algorithm 1 enumerates every hidden variable, so it is only measured on networks of at most
+	 * "-enumeration-limit N" variables (20 by default).
+	 */
+	public static void main(String[] args) {
+		String[] types = {"1", "2", "3", "4"};
+		String fixtures = "Inputs";
+		int warmup = 3, iterations = 10, size = 14, card = 2, numOfQueries = 20, numOfEvidence = 3, enumerationLimit = 20;
+		long seed = 1, factorCacheSize = -1;
+		for (int i = 0; i + 1 < args.length; i++) {
+			if(args[i].equals("-types"))
+				types = args[++i].split(",");
+			else if(args[i].equals("-fixtures"))
+				fixtures = args[++i];
+			else if(args[i].equals("-warmup"))
+				warmup = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-iterations"))
+				iterations = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-size"))
+				size = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-card"))
+				card = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-queries"))
+				numOfQueries = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-evidence"))
+				numOfEvidence = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-enumeration-limit"))
+				enumerationLimit = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-seed"))
+				seed = Long.parseLong(args[++i]);
+			else if(args[i].equals("-factor-cache"))
+				factorCacheSize = Long.parseLong(args[++i]);
+		}
+		if(factorCacheSize != -1)
+			FactorCache.setDefault(factorCacheSize > 0? new FactorCache(factorCacheSize) : null);
+		Benchmark benchmark = new Benchmark(warmup, iterations);
+		System.out.println(String.format("%-28s %12s %10s %10s %10s %10s %12s", "benchmark", "ops/s", "p50 us",
+				"p90 us", "p99 us", "max us", "alloc B/op"));
+		File[] inputs = fixtures.equals("none")? null : new File(fixtures).listFiles(
+				(dir, name) -> name.startsWith("input") && name.endsWith(".txt"));
+		if(inputs != null) {
+			Arrays.sort(inputs);
+			for(File input : inputs) {
+				List<Query> queries;
+				try {
+					queries = queriesOf(input);
+				} catch (IOException e) {
+					System.err.println(input + ": " + e.getMessage());
+					continue;
+				}
+				String name = input.getName().substring(0, input.getName().length() - ".txt".length());
+				for(String type : types)
+					System.out.println(benchmark.measureQueries(name, queries, type));
+			}
+		}
+		int side = (int) Math.round(Math.sqrt(size));
+		Map<String,BayesianNetwork> networks = new LinkedHashMap<>();
+		networks.put("chain" + size, SyntheticNetworks.chain(size, card, seed));
+		networks.put("polytree" + size, SyntheticNetworks.polytree(size, 2, card, seed));
+		networks.put("grid" + side + "x" + side, SyntheticNetworks.grid(side, side, card, seed));
+		networks.put("dag" + size, SyntheticNetworks.randomDag(size, 3, 4, card, seed));
+		for(Map.Entry<String,BayesianNetwork> network : networks.entrySet()) {
+			List<Query> queries = SyntheticNetworks.randomQueries(network.getValue(), numOfQueries, numOfEvidence,
+					new String[] {"1"}, seed);
+			for(String type : types)
+				if(!type.equals("1") || network.getValue().size() <= enumerationLimit)
+					System.out.println(benchmark.measureQueries(network.getKey(), queries, type));
+			for(Result result : benchmark.measurePrimitives(network.getKey(), network.getValue()))
+				System.out.println(result);
+		}
+	}
+}
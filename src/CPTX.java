@@ -1,363 +1,501 @@
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
-
-public class CPTX {
-	
-	private List<String> hiddeNames;
-	private Map<String,Double> cptOfHidden;
-	
-	public List<String> getNamesOfHidden() {
-		return hiddeNames;
-	}
-
-	public Map<String, Double> getCptOfHidden() {
-		return cptOfHidden;
-	}
-	
-	public boolean containsHiddenName(String Name) {
-		return hiddeNames.contains(Name);
-	}
-	
-	private CPTX() {
-		hiddeNames = new ArrayList<>();
-		cptOfHidden = new TreeMap<>();
-	}
-	
-	/**
-	 * 
-	 * @param var
-	 * @param observedVar
-	 * @param evidence
-	 * @return a CPTX unique for the query variable, if a parent are not hidden, unlike the CPTX for others,
-	 * will keep him in the hidden names and the CPT keys will conclude only his observed values.
-	 */
-	public static CPTX createForQueryVariable(Variable var, List<Variable> observedVar, List<String> evidence) {
-		CPTX ans = new CPTX();
-		int numOfParents = var.numOfParents();
-		for(int i = 0; i < numOfParents; i++)
-			ans.hiddeNames.add(var.parentAt(i).getName());
-		ans.hiddeNames.add(var.getName());
-		Map<String,Double> tmp = new TreeMap<>(var.getCPT());
-		Set<String> keys = tmp.keySet();
-		boolean put = true;
-		for(String key : keys) {
-			put = true;
-			String[] splitedKey = key.split(",");
-			for (int i = 0; i < splitedKey.length; i++) {
-				Variable parentI = i == splitedKey.length-1?var:var.parentAt(i);
-				if(observedVar.contains(parentI) 
-						&& !splitedKey[i].equals(evidence.get(observedVar.indexOf(parentI)))) {
-					//System.out.println(parentI.getName() + " " + splitedKey[i]);
-					put = false;
-				}
-			}
-			if(put) {
-				ans.cptOfHidden.put(key, tmp.get(key));
-			}
-		}
-		return ans;
-	}
-	/**
-	 * Create a CPTX for a given variable, every hidden variable will be saved to hiddenNames and each of their 
-	 * values, while the observed one won't be saved neither to hiddenNames nor to CPT. (Filtering each value of
-	 * the observed and keeping the keys that contains the evidence).
-	 * @param A
-	 * @param observedVars
-	 * @param evidence
-	 */
-	public CPTX(Variable A, List<Variable> observedVars,List<String> evidence) {
-		hiddeNames = new ArrayList<>();
-		cptOfHidden = new TreeMap<>();
-		fillHiddenNames(A,observedVars,evidence);
-		Map<String,Double> tmpCpt = A.getCPT();
-		Set<String> keySet = tmpCpt.keySet();
-		for(String key : keySet) {
-			if(isKeyWithRightEvidence(A,key,observedVars,evidence))
-				cptOfHidden.put(onlyHiddenInKey(A,key), tmpCpt.get(key));
-		}
-	}
-	
-	/**
-	 * Removes evidence and keeps the hidden variable's values
-	 * @param a
-	 * @param key
-	 * @return a sequence of the hidden variable's values only
-	 */
-	private String onlyHiddenInKey(Variable a, String key) {
-		String ans = "";
-		String[] splitedKey = key.split(",");
-		int i = 0, numOfParents = a.numOfParents();
-		for(; i < numOfParents; i++)
-			if(this.hiddeNames.contains(a.parentAt(i).getName()))
-				ans+= splitedKey[i] + ",";
-		if(this.hiddeNames.contains(a.getName()))
-			ans += splitedKey[i];
-		if(!ans.equals("") && ans.charAt(ans.length()-1)==',')
-			ans = ans.substring(0, ans.length()-1);
-		return ans;
-	}
-	/**
-	 * 
-	 * @param a
-	 * @param key
-	 * @param observedVars
-	 * @param evidence
-	 * @return true, if every value of observed variables is in the evidence.
-	 */
-	private boolean isKeyWithRightEvidence(Variable a, String key, List<Variable> observedVars, List<String> evidence) {
-		String[] SKey = key.split(",");
-		int i = 0, numOfParentsA = a.numOfParents();
-		for(; i < numOfParentsA; i++) {
-			if(observedVars.contains(a.parentAt(i)) && 
-					!SKey[i].equals(evidence.get(observedVars.indexOf(a.parentAt(i)))))
-					return false;
-		}
-		if(observedVars.contains(a) && !SKey[i].equals(evidence.get(observedVars.indexOf(a))))
-			return false;
-		return true;
-	}
-	/**
-	 * Takes only the hidden variable's names
-	 * @param A
-	 * @param observedVars
-	 * @param evidence
-	 */
-	private void fillHiddenNames(Variable A,List<Variable> observedVars, List<String> evidence) {
-		int numOfParents = A.numOfParents();
-		int i = 0;
-		if(numOfParents == 0) {
-			this.hiddeNames.add(A.getName());
-			return;
-		}
-		for (; i < numOfParents; i++) {
-			if(!observedVars.contains(A.parentAt(i)))
-				this.hiddeNames.add(A.parentAt(i).getName());
-		}
-		if(!observedVars.contains(A))
-			this.hiddeNames.add(A.getName());
-	}
-	/**
-	 * 
-	 * @param o
-	 * @param operationsC
-	 * @return returns the Cartesian product of this x o.
-	 */
-	public CPTX CartasianProduct(CPTX o, int[] operationsC) {
-		CPTX ans = new CPTX();
-		List<String> mutualVars = getMutualVars(o);
-		ans.hiddeNames = hiddenNamesAfterJoin(o);
-		Set<String> keySetT = this.cptOfHidden.keySet()
-				,keySetO = o.cptOfHidden.keySet();
-		for(String keyT:keySetT) {
-			String[] splitedKeyT = keyT.split(",");
-			for(String keyO:keySetO) {
-				String[] splitedKeyO = keyO.split(",");
-				boolean AMEV =AllMutualEqualsValue(o,mutualVars,splitedKeyT,splitedKeyO);
-				if(AMEV) {
-					operationsC[1]++;
-					String newKey = Union(o,mutualVars,keyT,splitedKeyO);
-					ans.cptOfHidden.put(newKey, this.cptOfHidden.get(keyT)*o.cptOfHidden.get(keyO));
-				}
-			}
-		}
-		return ans;
-	}
-	
-	/**
-	 * 
-	 * @param o
-	 * @param mutualVars
-	 * @param keyT
-	 * @param splitedKeyO
-	 * @return keyT + (keyO / keyT). (In group theory terms).
-	 */
-	private String Union(CPTX o, List<String> mutualVars, String keyT, String[] splitedKeyO) {
-		String ans = keyT + ",";
-		for (int i = 0; i < o.hiddeNames.size(); i++) {
-			String name = o.hiddeNames.get(i);
-			if(!mutualVars.contains(name))
-				ans += splitedKeyO[i] + ",";
-		}
-		if(ans.charAt(ans.length()-1) == ',')
-			ans = ans.substring(0, ans.length()-1);
-		if(ans.charAt(0) == ',')
-			ans = ans.substring(1);
-		return ans;
-	}
-	/**
-	 * return is both rows are join-able?
-	 * @param o
-	 * @param mutualVars
-	 * @param splitedKeyT
-	 * @param splitedKeyO
-	 * @return if each mutual variable have the same value return true, otherwise false.
-	 */
-	private boolean AllMutualEqualsValue(CPTX o, List<String> mutualVars, String[] splitedKeyT, String[] splitedKeyO) {	
-		for (int i = 0; i < mutualVars.size(); i++) {
-			String nameOfMutaulVar = mutualVars.get(i);
-			int indexT = this.hiddeNames.indexOf(nameOfMutaulVar);
-			int indexO = o.hiddeNames.indexOf(nameOfMutaulVar);
-			if(!splitedKeyT[indexT].equals(splitedKeyO[indexO]))
-				return false;
-		}
-		return true;
-	}
-	/**
-	 * 
-	 * @param o
-	 * @return the new hidden names after joining this with o.
-	 */
-	private List<String> hiddenNamesAfterJoin(CPTX o) {
-		List<String> ans = new ArrayList<>(this.hiddeNames);
-		for(String name : o.hiddeNames)
-			if(!this.hiddeNames.contains(name))
-				ans.add(name);
-		return ans;
-	}
-	/**
-	 * 
-	 * @param o
-	 * @return mutual variables names
-	 */
-	private List<String> getMutualVars(CPTX o) {
-		List<String> ans = new ArrayList<>();
-		for(String nameT : this.hiddeNames) {
-			for(String nameO : o.hiddeNames) {
-				if(nameT.equals(nameO)) {
-					ans.add(nameT);
-					break;
-				}
-			}
-		}
-		return ans;
-	}
-	/**
-	 * eliminates each hidden variable in this if not found in any CPTX in listCPTX.
-	 * @param listCPTX
-	 * @param operationsC
-	 */
-	public void eliminateHidden(List<CPTX> listCPTX, int[] operationsC) {
-		List<Boolean> foundedVarsList = getListOfFoundedVars(listCPTX);
-		int i = 0;
-		List<Integer> eliminateIndxs = new ArrayList<>();
-		for (; i < foundedVarsList.size();i++) {
-			if(!foundedVarsList.get(i)) {
-				eliminateIndxs.add(i);
-				/*EliminateOn(i, operationsC);
-				foundedVarsList.remove(i);
-				i--;*/
-			}
-		}
-		EliminateOn(eliminateIndxs, operationsC);
-	}
-	/**
-	 * Eliminates variables based of the eliminateIndxs argument.
-	 * @param eliminateIndxs
-	 * @param operationsC
-	 */
-	private void EliminateOn(List<Integer> eliminateIndxs, int[] operationsC) {
-		Map<String,Double> newCpt = new TreeMap<>();
-		Set<String> keySet1 = this.cptOfHidden.keySet(),
-				keySet2 = this.cptOfHidden.keySet();
-		for(String key1 : keySet1) {
-			String[] SKey1 = key1.split(",");
-			String newKey = "";
-			for (int j = 0; j < this.hiddeNames.size(); j++) {
-				if(!eliminateIndxs.contains(j))
-					newKey += SKey1[j] + ",";
-			}
-			if(!newKey.equals("") && newKey.charAt(newKey.length()-1) == ',')
-				newKey = newKey.substring(0, newKey.length()-1);
-			if(newCpt.get(newKey) == null) {
-			double sum = 0; int c = 0;
-			for(String key2 : keySet2) {
-				String[] SKey2 = key2.split(",");
-				if(AllEqualBut(eliminateIndxs,SKey1,SKey2)) {
-					operationsC[0] += c>0 ?1:0;
-					sum += this.cptOfHidden.get(key2);
-					c++;
-				}
-			}
-				newCpt.put(newKey, sum);
-			}
-		}
-		this.cptOfHidden = newCpt;
-		int shift=0;
-		for(int eliIndx : eliminateIndxs)
-			this.hiddeNames.remove(eliIndx-(shift++));
-	}
-	/**
-	 * 
-	 * @param eliminateIndxs
-	 * @param sKey1
-	 * @param sKey2
-	 * @return if all values in splitted key in indexes that are not in eliminateIndxs equal, returns true
-	 * otherwise false.
-	 */
-	private boolean AllEqualBut(List<Integer> eliminateIndxs, String[] sKey1, String[] sKey2) {
-		for (int j = 0; j < sKey1.length; j++) {
-			if(!eliminateIndxs.contains(j) && ! sKey1[j].equals(sKey2[j]))
-				return false;
-		}
-		return true;
-	}
-	/**
-	 * 
-	 * @param listCPTX
-	 * @return a list boolean, each boolean value corresponds to hidden name, if hidden name is found in 
-	 * the list, the corresponding value will be true, otherwise false.
-	 */
-	private List<Boolean> getListOfFoundedVars(List<CPTX> listCPTX) {
-		List<Boolean> ans = new ArrayList<>();
-		for(int i = 0; i < this.hiddeNames.size(); i++) {
-			String name = this.hiddeNames.get(i);
-			for(CPTX cptF : listCPTX) {
-				if(cptF.containsHiddenName(name)) {
-					ans.add(i ,true);
-					break;
-				}
-			}
-			if(ans.size() == i)
-				ans.add(i, false);
-		}
-		return ans;
-	}
-	/**
-	 * Eliminates every hidden value in the CPTX of query variable.
-	 * @param queryVarName
-	 * @param operationsC
-	 */
-	public void eliminateOnOtherThan(String queryVarName ,int[] operationsC) {
-		List<Integer> eliminateIndxs = new ArrayList<>();
-		for (int i = 0; i < this.hiddeNames.size(); i++) {
-			String name = this.hiddeNames.get(i);
-			if(!name.equals(queryVarName)) {
-				eliminateIndxs.add(i);
-				/*EliminateOn(i, operationsC);
-				i--;*/
-			}
-		}
-		EliminateOn(eliminateIndxs, operationsC);
-	}
-	/**
-	 * 
-	 * @return if hiddenName has more than one value, returns true, otherwise, false.
-	 */
-	public boolean stillHiddenVariables() {
-		if(this.hiddeNames.size() > 1)
-			return true;
-		return false;
-	}
-	/**
-	 * @return data of CPTX as String
-	 */
-	public String toString() {
-		String ans = "";
-		ans = "Names of Hidden: " + this.hiddeNames.toString();
-		ans += "Cpt : " +this.cptOfHidden.toString();
-		return ans;
-	}
-}
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class CPTX {
+
+	static final int MAX_DRIFT = 64;//** Largest distance from 1, as a power of two, left as it is in NumericMode.SCALED
+
+	private CompiledNetwork model;//** Compiled network of the variables
+	private int[] hiddenVars;//** Id of each hidden variable
+	private int[] cards;//** Number of values of each hidden variable
+	private int[] offsets;//** Ordinal of the first value of each hidden variable (non zero if restricted to evidence)
+	private int[] strides;//** Step in table between two consecutive values of each hidden variable
+	private double[] table;//** Probabilities in row-major order, the last hidden variable changes fastest
+	private int scale;//** The probabilities are the entries of table times 2^scale, 0 unless in NumericMode.SCALED
+
+	/**
+	 *
+	 * @return names of the hidden variables
+	 */
+	public List<String> getNamesOfHidden() {
+		List<String> ans = new ArrayList<>(hiddenVars.length);
+		for(int v : hiddenVars)
+			ans.add(model.nameOf(v));
+		return ans;
+	}
+
+	/**
+	 *
+	 * @return the factor as a map from the sequence of hidden variable's values to probability
+	 */
+	public Map<String, Double> getCptOfHidden() {
+		Map<String,Double> ans = new TreeMap<>();
+		for (int row = 0; row < table.length; row++) {
+			String key = "";
+			for (int d = 0; d < hiddenVars.length; d++) {
+				key += model.valueOf(hiddenVars[d], offsets[d] + digit(row, d));
+				if(d != hiddenVars.length - 1)
+					key += ",";
+			}
+			ans.put(key, table[row]);
+		}
+		return ans;
+	}
+
+	/**
+	 *
+	 * @return probabilities in row-major order of the hidden variables
+	 */
+	public double[] getTable() {
+		return table;
+	}
+	/**
+	 *
+	 * @return power of two the entries of the table are multiplied by, the probabilities of the factor
+	 */
+	public int getScale() {
+		return scale;
+	}
+
+	public boolean containsHiddenName(String Name) {
+		return getNamesOfHidden().contains(Name);
+	}
+
+	/**
+	 *
+	 * @param var id of variable
+	 * @return true if var is one of the hidden variables
+	 */
+	public boolean containsHiddenVar(int var) {
+		return dimOf(var) != -1;
+	}
+
+	private CPTX(CompiledNetwork model) {
+		this.model = model;
+	}
+
+	/**
+	 *
+	 * @param model
+	 * @param var id of the query variable
+	 * @param evidence value of each observed variable by id, -1 if hidden
+	 * @return a CPTX unique for the query variable, if a parent are not hidden, unlike the CPTX for others,
+	 * will keep him in the hidden names and the CPT keys will conclude only his observed values.
+	 */
+	public static CPTX createForQueryVariable(CompiledNetwork model, int var, int[] evidence) {
+		CPTX ans = new CPTX(model);
+		int[] family = familyOf(model, var);
+		ans.initDims(family.length);
+		for(int i = 0; i < family.length; i++) {
+			int id = family[i];
+			if(evidence[id] == -1)
+				ans.setDim(i, id, model.cardOf(id), 0);
+			else
+				ans.setDim(i, id, 1, evidence[id]);
+		}
+		ans.computeStrides();
+		ans.fillFromCPT(var, family, evidence);
+		return ans;
+	}
+	/**
+	 * Create a CPTX for a given variable, every hidden variable will be saved to hiddenNames and each of their
+	 * values, while the observed one won't be saved neither to hiddenNames nor to CPT. (Filtering each value of
+	 * the observed and keeping the keys that contains the evidence).
+	 * @param model
+	 * @param A id of the variable
+	 * @param evidence value of each observed variable by id, -1 if hidden
+	 */
+	public CPTX(CompiledNetwork model, int A, int[] evidence) {
+		this(model);
+		int[] family = familyOf(model, A);
+		fillHiddenNames(family,evidence);
+		fillFromCPT(A, family, evidence);
+	}
+
+	/**
+	 *
+	 * @param model
+	 * @param var id of the observed variable
+	 * @param value index of its observed value
+	 * @return a CPTX over var alone, 1 for the observed value and 0 for the others
+	 */
+	public static CPTX createIndicator(CompiledNetwork model, int var, int value) {
+		CPTX ans = new CPTX(model);
+		ans.initDims(1);
+		ans.setDim(0, var, model.cardOf(var), 0);
+		ans.computeStrides();
+		ans.table[value] = 1;
+		return ans;
+	}
+	/**
+	 * The CPTX operations never write into the arrays of a CPTX once it is built: a product builds new ones,
+	 * and an elimination replaces the arrays of the CPTX by the ones it builds. So two CPTXs can share their
+	 * arrays, and each can then be eliminated on without changing the other.
+	 * @return a CPTX with the same hidden variables and the same table, not copied
+	 */
+	public CPTX share() {
+		CPTX ans = new CPTX(model);
+		ans.hiddenVars = hiddenVars;
+		ans.cards = cards;
+		ans.offsets = offsets;
+		ans.strides = strides;
+		ans.table = table;
+		ans.scale = scale;
+		return ans;
+	}
+	/**
+	 *
+	 * @return a CPTX with the same hidden variables and its own copy of the table
+	 */
+	public CPTX copy() {
+		CPTX ans = new CPTX(model);
+		ans.hiddenVars = hiddenVars.clone();
+		ans.cards = cards.clone();
+		ans.offsets = offsets.clone();
+		ans.strides = strides.clone();
+		ans.table = table.clone();
+		ans.scale = scale;
+		return ans;
+	}
+
+	/**
+	 *
+	 * @param model
+	 * @param a
+	 * @return ids of the parents of a followed by a, in the order of its CPT
+	 */
+	private static int[] familyOf(CompiledNetwork model, int a) {
+		int numOfParents = model.numOfParents(a);
+		int[] ans = new int[numOfParents + 1];
+		for (int i = 0; i < numOfParents; i++)
+			ans[i] = model.parentAt(a, i);
+		ans[numOfParents] = a;
+		return ans;
+	}
+	/**
+	 * Copies every CPT entry of a that agrees with the evidence into the table.
+	 * @param a
+	 * @param family
+	 * @param evidence
+	 */
+	private void fillFromCPT(int a, int[] family, int[] evidence) {
+		int numOfFamily = family.length;
+		int[] strideOfFamily = new int[numOfFamily];
+		int[] offsetOfFamily = new int[numOfFamily];
+		for (int i = 0; i < numOfFamily; i++) {
+			int d = dimOf(family[i]);
+			strideOfFamily[i] = d == -1? 0 : strides[d];
+			offsetOfFamily[i] = d == -1? 0 : offsets[d];
+		}
+		int cptSize = model.cptSize(a);
+		for (int cptRow = 0; cptRow < cptSize; cptRow++) {
+			int row = 0, rest = cptRow;
+			boolean rightEvidence = true;
+			for (int i = numOfFamily - 1; i >= 0 && rightEvidence; i--) {
+				int card = model.cardOf(family[i]), val = rest % card;
+				rest /= card;
+				if(evidence[family[i]] != -1 && val != evidence[family[i]])
+					rightEvidence = false;
+				else
+					row += (val - offsetOfFamily[i]) * strideOfFamily[i];
+			}
+			if(rightEvidence)
+				table[row] = model.cptAt(a, cptRow);
+		}
+	}
+	/**
+	 * Takes only the hidden variable's names
+	 * @param family ids of the parents of the variable followed by the variable
+	 * @param evidence
+	 */
+	private void fillHiddenNames(int[] family,int[] evidence) {
+		int A = family[family.length - 1];
+		if(family.length == 1) {
+			initDims(1);
+			if(evidence[A] == -1)
+				setDim(0, A, model.cardOf(A), 0);
+			else
+				setDim(0, A, 1, evidence[A]);
+			computeStrides();
+			return;
+		}
+		int numOfHidden = 0;
+		for(int id : family)
+			if(evidence[id] == -1)
+				numOfHidden++;
+		initDims(numOfHidden);
+		int d = 0;
+		for(int id : family)
+			if(evidence[id] == -1)
+				setDim(d++, id, model.cardOf(id), 0);
+		computeStrides();
+	}
+	/**
+	 * Allocates the arrays describing numOfDims hidden variables.
+	 * @param numOfDims
+	 */
+	private void initDims(int numOfDims) {
+		hiddenVars = new int[numOfDims];
+		cards = new int[numOfDims];
+		offsets = new int[numOfDims];
+		strides = new int[numOfDims];
+	}
+	/**
+	 * Sets the hidden variable at position d, strides must be computed after every dimension is set.
+	 * @param d
+	 * @param var
+	 * @param card
+	 * @param offset
+	 */
+	private void setDim(int d, int var, int card, int offset) {
+		hiddenVars[d] = var;
+		cards[d] = card;
+		offsets[d] = offset;
+	}
+	/**
+	 * Computes the strides from the cardinalities and allocates an empty table.
+	 */
+	private void computeStrides() {
+		int size = 1;
+		for (int d = hiddenVars.length - 1; d >= 0; d--) {
+			strides[d] = size;
+			size *= cards[d];
+		}
+		table = new double[size];
+	}
+	/**
+	 *
+	 * @param var id of variable
+	 * @return the position of var in the hidden variables, -1 if not hidden
+	 */
+	private int dimOf(int var) {
+		for (int d = 0; d < hiddenVars.length; d++)
+			if(hiddenVars[d] == var)
+				return d;
+		return -1;
+	}
+	/**
+	 *
+	 * @param row
+	 * @param d
+	 * @return the value (relative to offset) of hidden variable d in the given row
+	 */
+	private int digit(int row, int d) {
+		return (row / strides[d]) % cards[d];
+	}
+	/**
+	 * Walks the assignments of the product once, moving the row of this and the row of o along with
+	 * the stride each hidden variable has in them (zero if it is not one of their hidden variables).
+	 * @param o
+	 * @param operationsC
+	 * @return returns the Cartesian product of this x o.
+	 */
+	public CPTX CartasianProduct(CPTX o, int[] operationsC) {
+		QueryMetrics metrics = QueryMetrics.current();
+		long start = metrics == null? 0 : System.nanoTime();
+		CPTX ans = new CPTX(model);
+		ans.joinDims(this, o);
+		int numOfDims = ans.hiddenVars.length;
+		int[] strideT = ans.stridesOf(this), strideO = ans.stridesOf(o);
+		int[] assignment = new int[numOfDims];
+		int rowT = 0, rowO = 0;
+		for (int row = 0; row < ans.table.length; row++) {
+			ans.table[row] = this.table[rowT] * o.table[rowO];
+			for (int d = numOfDims - 1; d >= 0; d--) {
+				rowT += strideT[d];
+				rowO += strideO[d];
+				if(++assignment[d] < ans.cards[d])
+					break;
+				rowT -= ans.cards[d] * strideT[d];
+				rowO -= ans.cards[d] * strideO[d];
+				assignment[d] = 0;
+			}
+		}
+		operationsC[1] += ans.table.length;
+		ans.scale = this.scale + o.scale;
+		if(NumericMode.getDefault() == NumericMode.SCALED)
+			ans.rescale();
+		if(metrics != null)
+			metrics.joined(ans.table.length, start);
+		return ans;
+	}
+	/**
+	 * Moves the largest entry of the table back near 1 when it is more than 2^MAX_DRIFT away from it, by a
+	 * power of two so that no precision is lost. Kept as a separate pass so the product loop stays a plain
+	 * multiplication.
+	 */
+	private void rescale() {
+		double max = 0;
+		for (int row = 0; row < table.length; row++)
+			max = Math.max(max, table[row]);
+		if(max == 0)
+			return;
+		int exponent = Math.getExponent(max);
+		if(Math.abs(exponent) <= MAX_DRIFT)
+			return;
+		double factor = Math.scalb(1.0, -exponent);
+		for (int row = 0; row < table.length; row++)
+			table[row] *= factor;
+		scale += exponent;
+	}
+	/**
+	 *
+	 * @param f
+	 * @return for each hidden variable of this, its stride in f, or 0 if f does not have it.
+	 */
+	private int[] stridesOf(CPTX f) {
+		int[] ans = new int[hiddenVars.length];
+		for (int d = 0; d < hiddenVars.length; d++) {
+			int dF = f.dimOf(hiddenVars[d]);
+			ans[d] = dF == -1? 0 : f.strides[dF];
+		}
+		return ans;
+	}
+	/**
+	 * Sets the hidden variables to the ones of t followed by the ones of o that are not in t.
+	 * @param t
+	 * @param o
+	 */
+	private void joinDims(CPTX t, CPTX o) {
+		int numOfDims = t.hiddenVars.length;
+		for(int var : o.hiddenVars)
+			if(!t.containsHiddenVar(var))
+				numOfDims++;
+		initDims(numOfDims);
+		int d = 0;
+		for (int dT = 0; dT < t.hiddenVars.length; dT++, d++) {
+			hiddenVars[d] = t.hiddenVars[dT];
+			cards[d] = t.cards[dT];
+			offsets[d] = t.offsets[dT];
+		}
+		for (int dO = 0; dO < o.hiddenVars.length; dO++) {
+			if(!t.containsHiddenVar(o.hiddenVars[dO])) {
+				hiddenVars[d] = o.hiddenVars[dO];
+				cards[d] = o.cards[dO];
+				offsets[d] = o.offsets[dO];
+				d++;
+			}
+		}
+		computeStrides();
+	}
+	/**
+	 * eliminates each hidden variable in this if not found in any CPTX in listCPTX.
+	 * @param listCPTX
+	 * @param operationsC
+	 */
+	public void eliminateHidden(List<CPTX> listCPTX, int[] operationsC) {
+		boolean[] eliminate = new boolean[hiddenVars.length];
+		for (int d = 0; d < hiddenVars.length; d++) {
+			eliminate[d] = true;
+			for(CPTX cptF : listCPTX) {
+				if(cptF.containsHiddenVar(hiddenVars[d])) {
+					eliminate[d] = false;
+					break;
+				}
+			}
+		}
+		EliminateOn(eliminate, operationsC);
+	}
+	/**
+	 * Eliminates variables based of the eliminate argument, in a single pass over the table that adds each
+	 * row into the row of the reduced table it belongs to.
+	 * @param eliminate for each hidden variable, true if it should be summed out
+	 * @param operationsC
+	 */
+	private void EliminateOn(boolean[] eliminate, int[] operationsC) {
+		QueryMetrics metrics = QueryMetrics.current();
+		long start = metrics == null? 0 : System.nanoTime();
+		int numOfDims = hiddenVars.length, numOfKept = 0;
+		for(boolean e : eliminate)
+			if(!e)
+				numOfKept++;
+		CPTX reduced = new CPTX(model);
+		reduced.initDims(numOfKept);
+		for (int d = 0, k = 0; d < numOfDims; d++) {
+			if(!eliminate[d]) {
+				reduced.setDim(k++, hiddenVars[d], cards[d], offsets[d]);
+			}
+		}
+		reduced.computeStrides();
+		int[] strideInReduced = new int[numOfDims];
+		for (int d = 0, k = 0; d < numOfDims; d++)
+			strideInReduced[d] = eliminate[d]? 0 : reduced.strides[k++];
+		int[] assignment = new int[numOfDims];
+		double[] newTable = reduced.table;
+		int newRow = 0;
+		for (int row = 0; row < table.length; row++) {
+			newTable[newRow] += table[row];
+			for (int d = numOfDims - 1; d >= 0; d--) {
+				newRow += strideInReduced[d];
+				if(++assignment[d] < cards[d])
+					break;
+				newRow -= cards[d] * strideInReduced[d];
+				assignment[d] = 0;
+			}
+		}
+		//** Every row but the first of each reduced row is an addition
+		operationsC[0] += table.length - newTable.length;
+		if(metrics != null)
+			metrics.eliminated(table.length, newTable.length, start);
+		this.hiddenVars = reduced.hiddenVars;
+		this.cards = reduced.cards;
+		this.offsets = reduced.offsets;
+		this.strides = reduced.strides;
+		this.table = newTable;
+	}
+	/**
+	 * Sums out a single hidden variable.
+	 * @param var id of the variable
+	 * @param operationsC
+	 */
+	public void sumOut(int var, int[] operationsC) {
+		boolean[] eliminate = new boolean[hiddenVars.length];
+		int d = dimOf(var);
+		if(d != -1)
+			eliminate[d] = true;
+		EliminateOn(eliminate, operationsC);
+	}
+	/**
+	 * Eliminates every hidden value in the CPTX of query variable.
+	 * @param queryVar id of the query variable
+	 * @param operationsC
+	 */
+	public void eliminateOnOtherThan(int queryVar ,int[] operationsC) {
+		boolean[] eliminate = new boolean[hiddenVars.length];
+		for (int d = 0; d < hiddenVars.length; d++)
+			eliminate[d] = hiddenVars[d] != queryVar;
+		EliminateOn(eliminate, operationsC);
+	}
+	/**
+	 * Eliminates every hidden variable that is not kept.
+	 * @param keep ids of the variables that should stay hidden
+	 * @param operationsC
+	 */
+	public void eliminateOnOtherThan(BitSet keep, int[] operationsC) {
+		boolean[] eliminate = new boolean[hiddenVars.length];
+		for (int d = 0; d < hiddenVars.length; d++)
+			eliminate[d] = !keep.get(hiddenVars[d]);
+		EliminateOn(eliminate, operationsC);
+	}
+	/**
+	 *
+	 * @return if hiddenName has more than one value, returns true, otherwise, false.
+	 */
+	public boolean stillHiddenVariables() {
+		if(this.hiddenVars.length > 1)
+			return true;
+		return false;
+	}
+	/**
+	 * @return data of CPTX as String
+	 */
+	public String toString() {
+		String ans = "";
+		ans = "Names of Hidden: " + getNamesOfHidden().toString();
+		ans += "Cpt : " + getCptOfHidden().toString();
+		return ans;
+	}
+}
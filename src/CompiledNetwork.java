@@ -0,0 +1,242 @@
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public final class CompiledNetwork {
+
+	private final String[] names;//** Name of each variable by id, null for ids that are not compiled
+	private final String[][] values;//** Values of each variable by id
+	private final int[] cards;//** Number of values of each variable by id
+	private final int[][] parents;//** Ids of the parents of each variable, in the order of its CPT
+	private final int[] cptOffsets;//** Index in cpts of the first entry of each variable's CPT
+	private final double[] cpts;//** Every CPT in row-major order (parents then variable, the variable changes fastest),
+	                            //** null if they are mapped from a network file
+	private final DoubleBuffer mapped;//** Every CPT in the order of cpts mapped from a network file, only read with
+	                                  //** absolute gets, null for a compiled text network
+
+	/**
+	 * Compiles the variables of the network, and the names and values of their parents.
+	 * @param network
+	 */
+	public CompiledNetwork(BayesianNetwork network) {
+		int idBound = network.getStructure().idBound();
+		names = new String[idBound];
+		values = new String[idBound][];
+		cards = new int[idBound];
+		parents = new int[idBound][];
+		int size = network.size();
+		for (int i = 0; i < size; i++) {
+			Variable v = network.varAt(i);
+			int id = v.getId(), numOfParents = v.numOfParents();
+			describe(v);
+			parents[id] = new int[numOfParents];
+			for (int p = 0; p < numOfParents; p++) {
+				describe(v.parentAt(p));
+				parents[id][p] = v.parentAt(p).getId();
+			}
+		}
+		cptOffsets = offsetsOfCPTs();
+		cpts = new double[cptOffsets[idBound]];
+		mapped = null;
+		for (int i = 0; i < size; i++)
+			compileCPT(network.varAt(i));
+	}
+	/**
+	 * Compiled network of variables read from a network file, its CPTs are read from the mapping and not
+	 * copied to the heap.
+	 * @param names name of each variable by id, null for ids that are not used
+	 * @param values values of each variable by id
+	 * @param parents ids of the parents of each variable by id, null for variables whose CPT is not compiled
+	 * @param cpts every CPT in the order of the ids, as laid out by {@link #cptAt(int, int)}
+	 */
+	CompiledNetwork(String[] names, String[][] values, int[][] parents, DoubleBuffer cpts) {
+		int idBound = names.length;
+		this.names = names;
+		this.values = values;
+		this.parents = parents;
+		cards = new int[idBound];
+		for (int id = 0; id < idBound; id++)
+			if(values[id] != null)
+				cards[id] = values[id].length;
+		cptOffsets = offsetsOfCPTs();
+		if(cpts.remaining() != cptOffsets[idBound])
+			throw new IllegalArgumentException("Expected " + cptOffsets[idBound] + " CPT entries instead of " + cpts.remaining());
+		this.cpts = null;
+		mapped = cpts;
+	}
+
+	/**
+	 *
+	 * @return index in cpts of the first entry of each variable's CPT, followed by the number of entries
+	 */
+	private int[] offsetsOfCPTs() {
+		int idBound = names.length;
+		int[] ans = new int[idBound + 1];
+		int numOfEntries = 0;
+		for (int id = 0; id < idBound; id++) {
+			ans[id] = numOfEntries;
+			if(parents[id] != null)
+				numOfEntries += cptSize(id);
+		}
+		ans[idBound] = numOfEntries;
+		return ans;
+	}
+
+	/**
+	 * Keeps the name and values of v.
+	 * @param v
+	 */
+	private void describe(Variable v) {
+		int id = v.getId();
+		if(names[id] != null)
+			return;
+		names[id] = v.getName();
+		List<String> vals = v.getValues();
+		values[id] = vals.toArray(new String[vals.size()]);
+		cards[id] = vals.size();
+	}
+	/**
+	 * Parses the keys of the CPT of v into its place in cpts.
+	 * @param v
+	 * @throws IllegalArgumentException if a key has a value that is not a value of its variable
+	 */
+	private void compileCPT(Variable v) {
+		int id = v.getId(), numOfParents = v.numOfParents();
+		for(Map.Entry<String,Double> entry : v.getCPT().entrySet()) {
+			String[] SKey = entry.getKey().split(",");
+			if(SKey.length != numOfParents + 1)
+				throw new IllegalArgumentException("Wrong CPT row of " + v.getName() + "! " + entry.getKey());
+			int row = 0;
+			for (int p = 0; p <= numOfParents; p++) {
+				int var = p < numOfParents? parents[id][p] : id, index = valueIndex(var, SKey[p]);
+				if(index == -1)
+					throw new IllegalArgumentException("Wrong CPT row of " + v.getName() + "! " + SKey[p]
+							+ " is not a value of " + names[var]);
+				row = row * cards[var] + index;
+			}
+			cpts[cptOffsets[id] + row] = entry.getValue();
+		}
+	}
+
+	/**
+	 *
+	 * @return size of arrays indexed by the ids of the variables
+	 */
+	public int idBound() {
+		return names.length;
+	}
+	/**
+	 *
+	 * @param id
+	 * @return true if the CPT of the variable is compiled
+	 */
+	public boolean contains(int id) {
+		return id < parents.length && parents[id] != null;
+	}
+	/**
+	 *
+	 * @param id
+	 * @return name of the variable
+	 */
+	public String nameOf(int id) {
+		return names[id];
+	}
+	/**
+	 *
+	 * @param id
+	 * @param value
+	 * @return the value of the variable at that index
+	 */
+	public String valueOf(int id, int value) {
+		return values[id][value];
+	}
+	/**
+	 *
+	 * @param id
+	 * @param value
+	 * @return index of value in the values of the variable, -1 if not one of them
+	 */
+	public int valueIndex(int id, String value) {
+		String[] vals = values[id];
+		for (int i = 0; i < vals.length; i++)
+			if(vals[i].equals(value))
+				return i;
+		return -1;
+	}
+	/**
+	 *
+	 * @param id
+	 * @return the values of the variable, null if not compiled
+	 */
+	public List<String> valuesOf(int id) {
+		return values[id] == null? null : Collections.unmodifiableList(Arrays.asList(values[id]));
+	}
+	/**
+	 *
+	 * @return number of entries of every CPT
+	 */
+	public int numOfEntries() {
+		return cptOffsets[cptOffsets.length - 1];
+	}
+	/**
+	 *
+	 * @param id
+	 * @return number of values of the variable
+	 */
+	public int cardOf(int id) {
+		return cards[id];
+	}
+	/**
+	 *
+	 * @param id
+	 * @return number of parents of the variable
+	 */
+	public int numOfParents(int id) {
+		return parents[id].length;
+	}
+	/**
+	 *
+	 * @param id
+	 * @param p
+	 * @return id of the parent at index p
+	 */
+	public int parentAt(int id, int p) {
+		return parents[id][p];
+	}
+	/**
+	 *
+	 * @param id
+	 * @return number of entries in the CPT of the variable
+	 */
+	public int cptSize(int id) {
+		int ans = cards[id];
+		for(int par : parents[id])
+			ans *= cards[par];
+		return ans;
+	}
+	/**
+	 *
+	 * @param id
+	 * @param row
+	 * @return the entry of the CPT of the variable at that row
+	 */
+	public double cptAt(int id, int row) {
+		int index = cptOffsets[id] + row;
+		return cpts != null? cpts[index] : mapped.get(index);
+	}
+	/**
+	 *
+	 * @param id
+	 * @param assignment index of the value of every variable by id
+	 * @return probability of the value of the variable given the values of its parents
+	 */
+	public double probability(int id, int[] assignment) {
+		int row = 0;
+		for(int par : parents[id])
+			row = row * cards[par] + assignment[par];
+		int index = cptOffsets[id] + row * cards[id] + assignment[id];
+		return cpts != null? cpts[index] : mapped.get(index);
+	}
+}
@@ -0,0 +1,67 @@
+public interface EliminationHeuristic {
+
+	/**
+	 *
+	 * @param graph moral graph of the variables not eliminated yet
+	 * @param v candidate variable
+	 * @return cost of eliminating v next, the variable with the lowest cost is eliminated first
+	 */
+	long cost(MoralGraph graph, int v);
+
+	/**
+	 * Minimum number of neighbors.
+	 */
+	EliminationHeuristic MIN_DEGREE = new EliminationHeuristic() {
+		@Override
+		public long cost(MoralGraph graph, int v) {
+			return graph.degree(v);
+		}
+	};
+	/**
+	 * Minimum number of edges added between the neighbors.
+	 */
+	EliminationHeuristic MIN_FILL = new EliminationHeuristic() {
+		@Override
+		public long cost(MoralGraph graph, int v) {
+			return graph.fillIn(v);
+		}
+	};
+	/**
+	 * Minimum number of edges added between the neighbors, each weighted by the number of values of its ends.
+	 */
+	EliminationHeuristic WEIGHTED_MIN_FILL = new EliminationHeuristic() {
+		@Override
+		public long cost(MoralGraph graph, int v) {
+			return graph.weightedFillIn(v);
+		}
+	};
+	/**
+	 * Minimum size of the created factor.
+	 */
+	EliminationHeuristic MIN_WEIGHT = new EliminationHeuristic() {
+		@Override
+		public long cost(MoralGraph graph, int v) {
+			return graph.weight(v);
+		}
+	};
+
+	/**
+	 *
+	 * @param name type of query
+	 * @return the heuristic that goes by that name, otherwise null
+	 */
+	static EliminationHeuristic byName(String name) {
+		switch(name) {
+		case "min-degree":
+			return MIN_DEGREE;
+		case "min-fill":
+			return MIN_FILL;
+		case "weighted-min-fill":
+			return WEIGHTED_MIN_FILL;
+		case "min-weight":
+			return MIN_WEIGHT;
+		default:
+			return null;
+		}
+	}
+}
@@ -0,0 +1,321 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Algorithm 1 without enumerating every assignment: the hidden variables are summed in the order of the
+ * network, and the CPT of a variable is multiplied in as soon as its family is assigned, outside the sums of the
+ * hidden variables after it. The sum over the hidden variables after a given one only depends on the earlier
+ * hidden variables in the families of the later CPTs (its frontier), so it is kept for every assignment of the
+ * frontier and never summed twice. The sums kept by all the hidden variables together are bounded, the smallest
+ * frontiers are kept first and the others are summed again, and each memo is allocated the first time it is
+ * used. The assignment is a single int array and nothing else is allocated while summing.
+ * <p>
+ * The answer is the sum algorithm 1 computes, and the operations reported are the ones algorithm 1 counts for
+ * the full enumeration (up to the largest int), see {@link #numOfAssignments()}. The operations actually done
+ * are counted by {@link #getAdditions()} and {@link #getMultiplications()}.
+ */
+public class Enumeration {
+
+	private static final int MAX_MEMO_ENTRIES = 1 << 20;//** Largest number of sums kept for the frontiers of all the hidden variables
+
+	private final CompiledNetwork model;//** Compiled network of the variables
+	private final int queryVar;//** Id of the query variable
+	private final int[] assignment;//** Index of the value of every variable by id, the hidden ones while summing
+	private final int[] hidden;//** Ids of the hidden variables, in the order of the network
+	private final int[][] readyAt;//** Ids of the variables whose family is assigned with each hidden variable
+	private final int[] constant;//** Ids of the variables with no hidden variable in their family
+	private final int[][] frontier;//** Ids of the earlier hidden variables the sum from each hidden variable depends on
+	private final int[] memoSize;//** Number of assignments of the frontier of each hidden variable, 0 if its sums are not kept
+	private final double[][] memo;//** Sum from each hidden variable by the assignment of its frontier, NaN until computed, null until used
+	private final int[][] memoScale;//** Power of two of each kept sum in NumericMode.SCALED
+	private final boolean scaled;//** True in NumericMode.SCALED
+	private int scale;//** Power of two of the last sum returned by sumFrom, always 0 in NumericMode.PLAIN
+	private long additions;//** Additions of probabilities done by the sums so far
+	private long multiplications;//** Multiplications of probabilities done by the sums so far
+
+	/**
+	 * @param network
+	 * @param queryVar id of the query variable, assigned by {@link #sum(int)}
+	 * @param evidence value of each observed variable by id, -1 if hidden
+	 */
+	public Enumeration(BayesianNetwork network, int queryVar, int[] evidence) {
+		model = network.getModel();
+		this.queryVar = queryVar;
+		scaled = NumericMode.getDefault() == NumericMode.SCALED;
+		assignment = evidence.clone();
+		assignment[queryVar] = 0;
+		int idBound = assignment.length;
+		//** Position of each hidden variable, -1 for the others
+		int[] position = new int[idBound];
+		Arrays.fill(position, -1);
+		List<Integer> hiddenList = new ArrayList<>();
+		for (int i = 0; i < network.size(); i++) {
+			int id = network.varAt(i).getId();
+			if(assignment[id] == -1) {
+				position[id] = hiddenList.size();
+				hiddenList.add(id);
+			}
+		}
+		int numOfHidden = hiddenList.size();
+		hidden = new int[numOfHidden];
+		for (int j = 0; j < numOfHidden; j++)
+			hidden[j] = hiddenList.get(j);
+		//** A CPT is ready once the last hidden variable of its family is assigned
+		List<List<Integer>> ready = new ArrayList<>(numOfHidden);
+		for (int j = 0; j < numOfHidden; j++)
+			ready.add(new ArrayList<>());
+		List<Integer> constantList = new ArrayList<>();
+		int[] readiness = new int[network.size()];
+		for (int i = 0; i < network.size(); i++) {
+			int id = network.varAt(i).getId(), last = position[id];
+			for (int p = 0; p < model.numOfParents(id); p++)
+				last = Math.max(last, position[model.parentAt(id, p)]);
+			readiness[i] = last;
+			if(last == -1)
+				constantList.add(id);
+			else
+				ready.get(last).add(id);
+		}
+		readyAt = new int[numOfHidden][];
+		for (int j = 0; j < numOfHidden; j++)
+			readyAt[j] = toArray(ready.get(j));
+		constant = toArray(constantList);
+		//** The sum from j depends on the hidden variables before j in the families of the CPTs ready from j on
+		frontier = new int[numOfHidden][];
+		long[] sizes = new long[numOfHidden];
+		for (int j = 0; j < numOfHidden; j++) {
+			boolean[] inFrontier = new boolean[numOfHidden];
+			for (int i = 0; i < network.size(); i++) {
+				if(readiness[i] < j)
+					continue;
+				int id = network.varAt(i).getId();
+				if(position[id] != -1 && position[id] < j)
+					inFrontier[position[id]] = true;
+				for (int p = 0; p < model.numOfParents(id); p++) {
+					int par = position[model.parentAt(id, p)];
+					if(par != -1 && par < j)
+						inFrontier[par] = true;
+				}
+			}
+			List<Integer> ids = new ArrayList<>();
+			long size = 1;
+			for (int t = 0; t < j; t++) {
+				if(inFrontier[t]) {
+					ids.add(hidden[t]);
+					size *= model.cardOf(hidden[t]);
+					size = Math.min(size, MAX_MEMO_ENTRIES + 1L);
+				}
+			}
+			frontier[j] = toArray(ids);
+			sizes[j] = size;
+		}
+		memoSize = memoSizes(sizes);
+		memo = new double[numOfHidden][];
+		memoScale = new int[numOfHidden][];
+	}
+	/**
+	 * Keeps the sums of the hidden variables with the smallest frontiers first, as long as they all fit in
+	 * MAX_MEMO_ENTRIES. The sum from the first hidden variable is computed once anyway.
+	 * @param sizes number of assignments of the frontier of each hidden variable
+	 * @return number of sums kept for each hidden variable, 0 for none
+	 */
+	private static int[] memoSizes(long[] sizes) {
+		int[] ans = new int[sizes.length];
+		Integer[] bySize = new Integer[sizes.length];
+		for (int j = 0; j < sizes.length; j++)
+			bySize[j] = j;
+		Arrays.sort(bySize, (a, b) -> Long.compare(sizes[a], sizes[b]));
+		long left = MAX_MEMO_ENTRIES;
+		for(int j : bySize) {
+			if(sizes[j] > left)
+				break;
+			if(j > 0) {
+				ans[j] = (int) sizes[j];
+				left -= sizes[j];
+			}
+		}
+		return ans;
+	}
+
+	/**
+	 *
+	 * @param value index of the value of the query variable
+	 * @return the sum algorithm 1 computes for the value, times 2^{@link #getScale()}
+	 */
+	public double sum(int value) {
+		assignment[queryVar] = value;
+		for(double[] kept : memo)
+			if(kept != null)
+				Arrays.fill(kept, Double.NaN);
+		double ans = product(constant);
+		int ansScale = scale;
+		if(constant.length > 0 && hidden.length > 0)
+			multiplications++;
+		ans *= sumFrom(0);
+		scale += ansScale;
+		return ans;
+	}
+	/**
+	 *
+	 * @return number of additions of probabilities done by {@link #sum(int)} so far
+	 */
+	public long getAdditions() {
+		return additions;
+	}
+	/**
+	 *
+	 * @return number of multiplications of probabilities done by {@link #sum(int)} so far
+	 */
+	public long getMultiplications() {
+		return multiplications;
+	}
+	/**
+	 *
+	 * @return number of sums kept so far for the frontiers of the hidden variables
+	 */
+	public long memoEntries() {
+		long ans = 0;
+		for(double[] kept : memo)
+			if(kept != null)
+				ans += kept.length;
+		return ans;
+	}
+	/**
+	 *
+	 * @return power of two the last sum is multiplied by, 0 unless in NumericMode.SCALED
+	 */
+	public int getScale() {
+		return scale;
+	}
+	/**
+	 * Algorithm 1 multiplies the CPTs of all the variables for every assignment of the hidden ones (but
+	 * the query variable), and adds up the products.
+	 * @return number of assignments algorithm 1 enumerates for each value of the query variable, exact up to
+	 * 2^53
+	 */
+	public double numOfAssignments() {
+		double ans = 1;
+		for(int id : hidden)
+			ans *= model.cardOf(id);
+		return ans;
+	}
+	/**
+	 * The work of {@link #sum(int)} for every value of the query variable, from the numbers of values only: the
+	 * sum from a hidden variable is computed once for each assignment of its frontier if its sums are kept, and
+	 * on every call otherwise, and each of its values multiplies the CPTs ready with it.
+	 * @return estimated number of multiplications and additions, an upper bound since a product of 0 is not
+	 * summed any further
+	 */
+	public double cost() {
+		double ans = constant.length, calls = 1;
+		for (int j = 0; j < hidden.length; j++) {
+			double computed = memoSize[j] != 0? Math.min(calls, memoSize[j]) : calls;
+			calls = computed * model.cardOf(hidden[j]);
+			ans += calls * (readyAt[j].length + 1);
+		}
+		return ans * model.cardOf(queryVar);
+	}
+
+	/**
+	 * Sums over the values of hidden[j], and of the hidden variables after it, the product of the CPTs ready
+	 * with them. Sets scale to the power of two of the sum.
+	 * @param j
+	 * @return the sum
+	 */
+	private double sumFrom(int j) {
+		if(j == hidden.length) {
+			scale = 0;
+			return 1;
+		}
+		int slot = -1;
+		if(memoSize[j] != 0) {
+			if(memo[j] == null) {
+				memo[j] = new double[memoSize[j]];
+				memoScale[j] = new int[memoSize[j]];
+				Arrays.fill(memo[j], Double.NaN);
+			}
+			slot = 0;
+			for(int id : frontier[j])
+				slot = slot * model.cardOf(id) + assignment[id];
+			double kept = memo[j][slot];
+			if(kept == kept) {
+				scale = memoScale[j][slot];
+				return kept;
+			}
+		}
+		int id = hidden[j], card = model.cardOf(id);
+		double sum = 0;
+		int sumScale = 0;
+		for (int val = 0; val < card; val++) {
+			assignment[id] = val;
+			double term = product(readyAt[j]);
+			if(term == 0)
+				continue;
+			int termScale = scale;
+			if(j + 1 < hidden.length && readyAt[j].length > 0)
+				multiplications++;
+			term *= sumFrom(j + 1);
+			termScale += scale;
+			if(term == 0)
+				continue;
+			if(sum != 0)
+				additions++;
+			if(scaled) {
+				int exponent = Math.getExponent(term);
+				if(exponent < -CPTX.MAX_DRIFT) {
+					term = Math.scalb(term, -exponent);
+					termScale += exponent;
+				}
+				//** The sum takes the larger power of two of the two terms
+				if(sum == 0 || termScale > sumScale) {
+					sum = Math.scalb(sum, sumScale - termScale) + term;
+					sumScale = termScale;
+				}
+				else
+					sum += Math.scalb(term, termScale - sumScale);
+			}
+			else
+				sum += term;
+		}
+		assignment[id] = -1;
+		if(slot != -1) {
+			memo[j][slot] = sum;
+			memoScale[j][slot] = sumScale;
+		}
+		scale = sumScale;
+		return sum;
+	}
+
+	/**
+	 * Sets scale to the power of two of the product.
+	 * @param ids
+	 * @return the product of the CPTs of the variables for the assignment
+	 */
+	private double product(int[] ids) {
+		double ans = 1;
+		scale = 0;
+		if(ids.length > 1)
+			multiplications += ids.length - 1;
+		for(int id : ids) {
+			ans *= model.probability(id, assignment);
+			if(scaled && ans != 0 && Math.getExponent(ans) < -CPTX.MAX_DRIFT) {
+				int exponent = Math.getExponent(ans);
+				ans = Math.scalb(ans, -exponent);
+				scale += exponent;
+			}
+		}
+		return ans;
+	}
+	/**
+	 *
+	 * @param ids
+	 * @return the ids as an array
+	 */
+	private static int[] toArray(List<Integer> ids) {
+		int[] ans = new int[ids.size()];
+		for (int i = 0; i < ans.length; i++)
+			ans[i] = ids.get(i);
+		return ans;
+	}
+}
@@ -0,0 +1,195 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Bounded cache of the CPTXs of the variables reduced by the evidence. A reduced CPTX depends only on the
+ * variable and on the evidence of its family (its parents and itself), so queries with different evidence
+ * share it as long as they agree on the family. The cache is shared by the threads answering the queries,
+ * every caller gets a CPTX sharing the table of the cached one (see {@link CPTX#share()}), so a hit costs a
+ * lookup and no copy. There is no cache unless one is set as the default.
+ */
+public class FactorCache {
+
+	private static volatile FactorCache defaultCache;//** Used by the inference algorithms, null for none
+
+	private final long maxEntries;//** Maximal number of probabilities in all the cached CPTXs
+	private final LinkedHashMap<Key,CPTX> factors;//** Cached CPTXs in access order
+	private long numOfEntries;//** Number of probabilities in all the cached CPTXs
+	private long hits;//** Number of CPTXs taken from the cache
+	private long misses;//** Number of CPTXs built from the CPTs
+
+	/**
+	 * @param maxEntries maximal number of probabilities in all the cached CPTXs, the least recently used CPTXs
+	 * are dropped first
+	 */
+	public FactorCache(long maxEntries) {
+		if(maxEntries < 1)
+			throw new IllegalArgumentException("The capacity of the cache must be positive!");
+		this.maxEntries = maxEntries;
+		factors = new LinkedHashMap<>(16, 0.75f, true);
+	}
+	/**
+	 *
+	 * @return the cache used by the inference algorithms, null if they build every CPTX
+	 */
+	public static FactorCache getDefault() {
+		return defaultCache;
+	}
+	/**
+	 *
+	 * @param cache the cache used by the inference algorithms, null to build every CPTX
+	 */
+	public static void setDefault(FactorCache cache) {
+		defaultCache = cache;
+	}
+
+	/**
+	 * Takes the CPTX from the default cache if any, otherwise builds it.
+	 * @param model
+	 * @param var id of the variable
+	 * @param evidence value of each observed variable by id, -1 if hidden
+	 * @return the CPTX of var reduced by the evidence, as built by {@link CPTX#CPTX(CompiledNetwork, int, int[])}
+	 */
+	public static CPTX factorOf(CompiledNetwork model, int var, int[] evidence) {
+		QueryMetrics metrics = QueryMetrics.current();
+		long start = metrics == null? 0 : System.nanoTime();
+		FactorCache cache = defaultCache;
+		CPTX ans = cache == null? new CPTX(model, var, evidence) : cache.get(model, var, evidence, false);
+		if(metrics != null)
+			metrics.time(QueryMetrics.Phase.FACTORS, start);
+		return ans;
+	}
+	/**
+	 * Takes the CPTX from the default cache if any, otherwise builds it.
+	 * @param model
+	 * @param var id of the query variable
+	 * @param evidence value of each observed variable by id, -1 if hidden
+	 * @return the CPTX of the query variable, as built by {@link CPTX#createForQueryVariable(CompiledNetwork, int, int[])}
+	 */
+	public static CPTX factorOfQueryVariable(CompiledNetwork model, int var, int[] evidence) {
+		QueryMetrics metrics = QueryMetrics.current();
+		long start = metrics == null? 0 : System.nanoTime();
+		FactorCache cache = defaultCache;
+		CPTX ans = cache == null? CPTX.createForQueryVariable(model, var, evidence) : cache.get(model, var, evidence, true);
+		if(metrics != null)
+			metrics.time(QueryMetrics.Phase.FACTORS, start);
+		return ans;
+	}
+	/**
+	 *
+	 * @param model
+	 * @param var id of the variable
+	 * @param evidence value of each observed variable by id, -1 if hidden
+	 * @param queryVariable true for the CPTX of the query variable
+	 * @return a CPTX sharing the table of the cached one, built and cached first if needed
+	 */
+	public CPTX get(CompiledNetwork model, int var, int[] evidence, boolean queryVariable) {
+		int numOfParents = model.numOfParents(var);
+		int[] familyEvidence = new int[numOfParents + 1];
+		for (int p = 0; p < numOfParents; p++)
+			familyEvidence[p] = evidence[model.parentAt(var, p)];
+		familyEvidence[numOfParents] = evidence[var];
+		Key key = new Key(model, var, queryVariable, familyEvidence);
+		CPTX ans;
+		synchronized(this) {
+			ans = factors.get(key);
+			if(ans != null)
+				hits++;
+			else
+				misses++;
+		}
+		QueryMetrics metrics = QueryMetrics.current();
+		if(metrics != null)
+			metrics.factorCacheLookup(ans != null);
+		if(ans != null)
+			return ans.share();
+		ans = queryVariable? CPTX.createForQueryVariable(model, var, evidence) : new CPTX(model, var, evidence);
+		put(key, ans);
+		return ans.share();
+	}
+	/**
+	 * Keeps the CPTX, dropping the least recently used ones while the cache holds too many probabilities.
+	 * @param key
+	 * @param factor
+	 */
+	private synchronized void put(Key key, CPTX factor) {
+		int size = factor.getTable().length;
+		if(size > maxEntries)
+			return;
+		CPTX old = factors.put(key, factor);
+		numOfEntries += size - (old == null? 0 : old.getTable().length);
+		Iterator<CPTX> eldest = factors.values().iterator();
+		while(numOfEntries > maxEntries) {
+			numOfEntries -= eldest.next().getTable().length;
+			eldest.remove();
+		}
+	}
+	/**
+	 *
+	 * @return number of CPTXs taken from the cache
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+	/**
+	 *
+	 * @return number of CPTXs built from the CPTs
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+	/**
+	 * Drops every CPTX and resets the statistics.
+	 */
+	public synchronized void clear() {
+		factors.clear();
+		numOfEntries = 0;
+		hits = 0;
+		misses = 0;
+	}
+	/**
+	 * @return the statistics of the cache
+	 */
+	public synchronized String toString() {
+		long lookups = hits + misses;
+		return "Factor cache: " + hits + " hits, " + misses + " misses, hit rate "
+				+ (lookups == 0? 0 : Math.round(hits * 1000.0 / lookups) / 10.0) + "%, "
+				+ factors.size() + " factors of " + numOfEntries + "/" + maxEntries + " probabilities";
+	}
+
+	private static final class Key {
+
+		private final CompiledNetwork model;//** Compared by identity, each network compiles its own model
+		private final int var;//** Id of the variable
+		private final boolean queryVariable;//** True for the CPTX of the query variable, which keeps its observed parents
+		private final int[] familyEvidence;//** Value of each parent and then of the variable, -1 if hidden
+		private final int hash;
+
+		private Key(CompiledNetwork model, int var, boolean queryVariable, int[] familyEvidence) {
+			this.model = model;
+			this.var = var;
+			this.queryVariable = queryVariable;
+			this.familyEvidence = familyEvidence;
+			int h = System.identityHashCode(model);
+			h = 31 * h + var;
+			h = 31 * h + (queryVariable? 1 : 0);
+			hash = 31 * h + Arrays.hashCode(familyEvidence);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj)
+				return true;
+			if(!(obj instanceof Key))
+				return false;
+			Key o = (Key) obj;
+			return model == o.model && var == o.var && queryVariable == o.queryVariable && hash == o.hash
+					&& Arrays.equals(familyEvidence, o.familyEvidence);
+		}
+	}
+}
@@ -0,0 +1,304 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers queries on a network while evidence is added and retracted one variable at a time.
+ * Each CPT is turned into a CPTX once, and each observation is a separate indicator CPTX over the observed
+ * variable, so changing the evidence of a variable only replaces its indicator. For every query variable the
+ * session keeps the CPTs of the network pruned for the observed variables ({@link BayesianNetwork#prune}),
+ * an elimination order (min-fill on their moral graph) and the message of each bucket. After a change that
+ * keeps the pruned network only the buckets that depend on the changed indicator are computed again,
+ * otherwise the buckets of the query variable are built again for the new pruned network.
+ * A session is not thread safe.
+ */
+public class InferenceSession {
+
+	private final BayesianNetwork network;//** Network of the session
+	private final CompiledNetwork model;//** Compiled network of the variables
+	private final int[] evidence;//** Observed value of each variable by id, -1 if hidden
+	private final CPTX[] cpts;//** CPTX of the whole CPT of each variable by id
+	private final CPTX[] indicators;//** Indicator of the observed value of each variable by id, null if hidden
+	private final Map<Integer,Buckets> bucketsOfQuery;//** Elimination of each query variable asked so far
+	private int observedChanges;//** Number of times a variable was observed or retracted, the pruned networks may differ since
+
+	/**
+	 * @param network
+	 */
+	public InferenceSession(BayesianNetwork network) {
+		this.network = network;
+		model = network.getModel();
+		evidence = new int[model.idBound()];
+		Arrays.fill(evidence, -1);
+		cpts = new CPTX[model.idBound()];
+		indicators = new CPTX[model.idBound()];
+		for (int i = 0; i < network.size(); i++) {
+			int id = network.varAt(i).getId();
+			cpts[id] = new CPTX(model, id, evidence);
+		}
+		bucketsOfQuery = new HashMap<>();
+	}
+
+	/**
+	 * Observes value for var, replacing its previous observation.
+	 * @param var
+	 * @param value
+	 */
+	public void observe(Variable var, String value) {
+		int id = idOf(var), val = model.valueIndex(id, value);
+		if(val == -1)
+			throw new IllegalArgumentException(value + " is not a value of " + var.getName() + "!");
+		if(evidence[id] == val)
+			return;
+		if(evidence[id] == -1)
+			observedChanges++;
+		evidence[id] = val;
+		indicators[id] = CPTX.createIndicator(model, id, val);
+		evidenceChanged(id);
+	}
+	/**
+	 * Removes the observation of var, if any.
+	 * @param var
+	 */
+	public void retract(Variable var) {
+		int id = idOf(var);
+		if(evidence[id] == -1)
+			return;
+		evidence[id] = -1;
+		indicators[id] = null;
+		observedChanges++;
+		evidenceChanged(id);
+	}
+	/**
+	 * Removes every observation.
+	 */
+	public void clearEvidence() {
+		for (int id = 0; id < evidence.length; id++) {
+			if(evidence[id] != -1) {
+				evidence[id] = -1;
+				indicators[id] = null;
+				observedChanges++;
+				evidenceChanged(id);
+			}
+		}
+	}
+	/**
+	 *
+	 * @param var
+	 * @return the observed value of var, null if hidden
+	 */
+	public String evidenceOf(Variable var) {
+		int id = idOf(var);
+		return evidence[id] == -1? null : model.valueOf(id, evidence[id]);
+	}
+	/**
+	 *
+	 * @param var query variable
+	 * @param operationsC additions and multiplications of the buckets that had to be computed again
+	 * @return the distribution of var given the current evidence, in the order of its values
+	 */
+	public double[] posterior(Variable var, int[] operationsC) {
+		int id = idOf(var);
+		Buckets buckets = bucketsOfQuery.get(id);
+		if(buckets == null || buckets.checkedAt != observedChanges) {
+			BitSet relevant = relevantTo(var);
+			if(buckets == null || !buckets.withCPT.equals(relevant)) {
+				buckets = new Buckets(id, relevant);
+				bucketsOfQuery.put(id, buckets);
+			}
+			buckets.checkedAt = observedChanges;
+		}
+		double[] ans = buckets.compute(operationsC);
+		double sum = 0;
+		for(double prob : ans)
+			sum += prob;
+		for (int i = 0; i < ans.length; i++)
+			ans[i] /= sum;
+		return ans;
+	}
+	/**
+	 *
+	 * @param var query variable
+	 * @param value
+	 * @param operationsC additions and multiplications of the buckets that had to be computed again
+	 * @return the probability of value given the current evidence, rounded to 5 digits
+	 */
+	public double probability(Variable var, String value, int[] operationsC) {
+		double[] ans = posterior(var, operationsC);
+		return Math.round(ans[model.valueIndex(var.getId(), value)] * 100000.0) / 100000.0;
+	}
+
+	/**
+	 *
+	 * @param var
+	 * @return id of var, if it is a variable of the network
+	 */
+	private int idOf(Variable var) {
+		if(network.indexOf(var) == -1)
+			throw new IllegalArgumentException(var.getName() + " is not a variable of the network!");
+		return var.getId();
+	}
+	/**
+	 *
+	 * @param var query variable
+	 * @return ids of the variables whose CPT is needed to answer var given the observed variables
+	 */
+	private BitSet relevantTo(Variable var) {
+		List<Variable> observedVars = new ArrayList<>();
+		for (int i = 0; i < network.size(); i++)
+			if(evidence[network.varAt(i).getId()] != -1)
+				observedVars.add(network.varAt(i));
+		BayesianNetwork relevant = network.prune(var, observedVars).getNetwork();
+		BitSet ans = new BitSet(model.idBound());
+		for (int i = 0; i < relevant.size(); i++)
+			ans.set(relevant.varAt(i).getId());
+		return ans;
+	}
+	/**
+	 * Drops the messages of every bucket that depends on the indicator of var.
+	 * @param var id of the variable
+	 */
+	private void evidenceChanged(int var) {
+		for(Buckets buckets : bucketsOfQuery.values())
+			buckets.invalidate(var);
+	}
+
+	/**
+	 * Bucket elimination of a query variable over the CPTs of its pruned network. Bucket i eliminates order[i]:
+	 * it holds the CPTs and messages whose first variable in the order is order[i], with the indicator of
+	 * order[i], and sends the sum of their product over order[i] to the bucket of the next variable of the
+	 * order in it. The last bucket holds what is left over the query variable, with its indicator. The observed
+	 * variables are eliminated like the hidden ones, and indicators of hidden variables are left out, which
+	 * does not change the variables of any message, so the buckets are the same for any evidence that keeps
+	 * the pruned network.
+	 */
+	private class Buckets {
+
+		private final int queryVar;//** Id of the query variable
+		private final BitSet withCPT;//** Ids of the variables of the pruned network, whose CPTs are eliminated
+		private int checkedAt;//** Value of observedChanges when the pruned network was last found to be withCPT
+		private final int[] order;//** Ids of the variables in the order they are eliminated
+		private final int[] position;//** Bucket of the indicator of each variable by id, -1 if in no CPT of withCPT
+		private final List<List<Integer>> cptsIn;//** Ids of the variables whose CPT is in each bucket
+		private final List<List<Integer>> messagesIn;//** Buckets whose message is in each bucket
+		private final int[] target;//** Bucket the message of each bucket is sent to
+		private final CPTX[] messages;//** Message of each bucket, null if it must be computed
+
+		/**
+		 * @param queryVar
+		 * @param withCPT ids of the variables of the pruned network
+		 */
+		private Buckets(int queryVar, BitSet withCPT) {
+			this.queryVar = queryVar;
+			this.withCPT = withCPT;
+			//** The parents of the pruned variables that are left out are observed, they are eliminated too
+			BitSet inFamilies = new BitSet(model.idBound());
+			List<int[]> families = new ArrayList<>();
+			for(int id = withCPT.nextSetBit(0); id != -1; id = withCPT.nextSetBit(id + 1)) {
+				int[] family = new int[model.numOfParents(id) + 1];
+				for (int p = 0; p < model.numOfParents(id); p++)
+					family[p] = model.parentAt(id, p);
+				family[family.length - 1] = id;
+				families.add(family);
+				for(int v : family)
+					inFamilies.set(v);
+			}
+			List<Integer> elimination = new MoralGraph(model, inFamilies, families)
+					.eliminationOrder(EliminationHeuristic.MIN_FILL, queryVar);
+			int numOfBuckets = elimination.size();
+			order = new int[numOfBuckets];
+			position = new int[model.idBound()];
+			Arrays.fill(position, -1);
+			for(int v = inFamilies.nextSetBit(0); v != -1; v = inFamilies.nextSetBit(v + 1))
+				position[v] = numOfBuckets;
+			for (int i = 0; i < numOfBuckets; i++) {
+				order[i] = elimination.get(i);
+				position[order[i]] = i;
+			}
+			cptsIn = new ArrayList<>(numOfBuckets + 1);
+			messagesIn = new ArrayList<>(numOfBuckets + 1);
+			for (int i = 0; i <= numOfBuckets; i++) {
+				cptsIn.add(new ArrayList<>());
+				messagesIn.add(new ArrayList<>());
+			}
+			List<List<Integer>> varsIn = new ArrayList<>(numOfBuckets + 1);
+			for (int i = 0; i <= numOfBuckets; i++)
+				varsIn.add(new ArrayList<>());
+			for(int[] family : families) {
+				int first = numOfBuckets;
+				for(int v : family)
+					first = Math.min(first, position[v]);
+				cptsIn.get(first).add(family[family.length - 1]);
+				for(int v : family)
+					varsIn.get(first).add(v);
+			}
+			target = new int[numOfBuckets];
+			for (int i = 0; i < numOfBuckets; i++) {
+				int next = numOfBuckets;
+				for(int v : varsIn.get(i))
+					if(position[v] > i)
+						next = Math.min(next, position[v]);
+				target[i] = next;
+				messagesIn.get(next).add(i);
+				for(int v : varsIn.get(i))
+					if(position[v] > i)
+						varsIn.get(next).add(v);
+			}
+			messages = new CPTX[numOfBuckets];
+		}
+
+		/**
+		 * Drops the messages that depend on the indicator of var.
+		 * @param var
+		 */
+		private void invalidate(int var) {
+			if(position[var] == -1)
+				return;
+			for (int b = position[var]; b < order.length; b = target[b])
+				messages[b] = null;
+		}
+		/**
+		 * Computes the missing messages, then the last bucket.
+		 * @param operationsC
+		 * @return unnormalized distribution of the query variable
+		 */
+		private double[] compute(int[] operationsC) {
+			for (int i = 0; i < order.length; i++) {
+				if(messages[i] == null) {
+					CPTX f = productOf(i, operationsC);
+					f.sumOut(order[i], operationsC);
+					messages[i] = f;
+				}
+			}
+			CPTX f = productOf(order.length, operationsC);
+			if(f.stillHiddenVariables())
+				f.eliminateOnOtherThan(queryVar, operationsC);
+			return f.getTable().clone();
+		}
+		/**
+		 *
+		 * @param b
+		 * @param operationsC
+		 * @return product of the CPTs, indicator and messages of bucket b, a CPTX of its own
+		 */
+		private CPTX productOf(int b, int[] operationsC) {
+			List<CPTX> factors = new ArrayList<>();
+			for(int id : cptsIn.get(b))
+				factors.add(cpts[id]);
+			int eliminated = b < order.length? order[b] : queryVar;
+			if(indicators[eliminated] != null)
+				factors.add(indicators[eliminated]);
+			for(int m : messagesIn.get(b))
+				factors.add(messages[m]);
+			if(factors.size() == 1)
+				return factors.get(0).copy();
+			CPTX ans = factors.get(0);
+			for (int i = 1; i < factors.size(); i++)
+				ans = ans.CartasianProduct(factors.get(i), operationsC);
+			return ans;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the posteriors of an {@link InferenceSession} against variable elimination from scratch, while the
+ * evidence is observed and retracted one variable at a time, on the queries of an input file and on a random
+ * sequence of changes of a synthetic network.
+ */
+public class InferenceSessionCheck {
+
+	private static final double TOLERANCE = 1e-9;//** Largest difference of a probability to the exact one
+
+	private int checked;//** Posteriors compared so far
+	private int failed;//** Posteriors that differ from the exact ones
+
+	/**
+	 * For every query of the input file, observes its evidence one variable at a time, then retracts the
+	 * first observed variable and observes it again, comparing the posterior of the query variable after
+	 * every step. On a random network of "-size N" variables of "-card N" values ("-seed S"), makes "-steps N"
+	 * random observations and retractions and compares the posterior of a random variable after each one.
+	 * Every posterior that differs is printed, and the check exits with status 1 if any does.
+	 * @param args "-in FILE" the input file (Inputs/input1.txt by default, "none" to skip it), "-size N" (200),
+	 * "-card N" (2), "-steps N" (300) and "-seed S" (1)
+	 */
+	public static void main(String[] args) {
+		String in = "Inputs/input1.txt";
+		int size = 200, card = 2, steps = 300;
+		long seed = 1;
+		for (int i = 0; i + 1 < args.length; i++) {
+			if(args[i].equals("-in"))
+				in = args[++i];
+			else if(args[i].equals("-size"))
+				size = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-card"))
+				card = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-steps"))
+				steps = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-seed"))
+				seed = Long.parseLong(args[++i]);
+		}
+		InferenceSessionCheck check = new InferenceSessionCheck();
+		if(!in.equals("none")) {
+			try (InputParser parser = InputParser.of(Paths.get(in))) {
+				BayesianNetwork network = parser.parseNetwork();
+				InferenceSession session = new InferenceSession(network);
+				for(InputQuery input : parser.parseQueries(network))
+					if(input instanceof Query)
+						check.checkQuery(network, session, (Query) input);
+			} catch (IOException e) {
+				System.err.println(in + ": " + e.getMessage());
+				System.exit(2);
+			}
+		}
+		check.checkRandomChanges(SyntheticNetworks.randomDag(size, 3, 6, card, seed), steps, new Random(seed));
+		System.out.println(check.checked - check.failed + " of " + check.checked + " posteriors match variable elimination");
+		if(check.failed > 0)
+			System.exit(1);
+	}
+
+	/**
+	 * Observes the evidence of query one variable at a time, then retracts the first observed variable and
+	 * observes it again, and clears the evidence of session.
+	 * @param network
+	 * @param session
+	 * @param query
+	 */
+	private void checkQuery(BayesianNetwork network, InferenceSession session, Query query) {
+		List<Variable> observedVars = query.getObservedVars();
+		List<String> evidence = query.getEvidence();
+		for (int i = 0; i < observedVars.size(); i++) {
+			session.observe(observedVars.get(i), evidence.get(i));
+			compare(network, session, query.getVariable(), "observe " + observedVars.get(i).getName());
+		}
+		if(!observedVars.isEmpty()) {
+			Variable first = observedVars.get(0);
+			session.retract(first);
+			compare(network, session, query.getVariable(), "retract " + first.getName());
+			session.observe(first, evidence.get(0));
+			compare(network, session, query.getVariable(), "observe " + first.getName() + " again");
+		}
+		session.clearEvidence();
+	}
+	/**
+	 * Observes a random value of a random variable, or retracts it if it is observed, steps times.
+	 * @param network
+	 * @param steps
+	 * @param random
+	 */
+	private void checkRandomChanges(BayesianNetwork network, int steps, Random random) {
+		InferenceSession session = new InferenceSession(network);
+		for (int step = 0; step < steps; step++) {
+			Variable var = network.varAt(random.nextInt(network.size()));
+			String change;
+			if(session.evidenceOf(var) != null && random.nextBoolean()) {
+				session.retract(var);
+				change = "retract " + var.getName();
+			}
+			else {
+				String value = var.getValues().get(random.nextInt(var.numOfValues()));
+				session.observe(var, value);
+				change = "observe " + var.getName() + "=" + value;
+			}
+			compare(network, session, network.varAt(random.nextInt(network.size())), "step " + step + " " + change);
+		}
+	}
+	/**
+	 * Compares the posterior of var in session with the one of variable elimination for its evidence.
+	 * Evidence of probability 0 has no posterior and is not compared.
+	 * @param network
+	 * @param session
+	 * @param var
+	 * @param change the last change of the evidence, printed if they differ
+	 */
+	private void compare(BayesianNetwork network, InferenceSession session, Variable var, String change) {
+		List<Variable> observedVars = new ArrayList<>();
+		List<String> evidence = new ArrayList<>(), observations = new ArrayList<>();
+		for (int i = 0; i < network.size(); i++) {
+			String value = session.evidenceOf(network.varAt(i));
+			if(value != null) {
+				observedVars.add(network.varAt(i));
+				evidence.add(value);
+				observations.add(network.varAt(i).getName() + "=" + value);
+			}
+		}
+		double[] exact = Variable.varEliByHeuristicPosterior(network, var, observedVars, evidence,
+				EliminationHeuristic.MIN_FILL, new int[2]);
+		double sum = 0;
+		for(double prob : exact)
+			sum += prob;
+		if(sum == 0)
+			return;
+		for (int val = 0; val < exact.length; val++)
+			exact[val] /= sum;
+		double[] posterior = session.posterior(var, new int[2]);
+		checked++;
+		for (int val = 0; val < exact.length; val++) {
+			if(!(Math.abs(posterior[val] - exact[val]) <= TOLERANCE)) {
+				failed++;
+				System.out.println("P(" + var.getName() + "|" + String.join(",", observations) + ") after " + change + ": "
+						+ Arrays.toString(posterior) + " instead of " + Arrays.toString(exact));
+				return;
+			}
+		}
+	}
+}
@@ -1,89 +1,229 @@
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.List;
-
-
-public class InputFileProcessor {
-	
-	private BayesianNetwork BNT;
-	private List<Query> queriesList;
-	/**
-	 * Processes and builds the network and queries.
-	 * @param FileName
-	 */
-	public void ProcessFile(String FileName) {
-		BufferedReader buffInFlReader = null;
-		List<String> VariablesData = null,QueriesData = null;
-		try {
-			buffInFlReader = new BufferedReader(new FileReader(FileName));
-			VariablesData = DataOfVariablesOrQueries(buffInFlReader);
-			QueriesData = DataOfVariablesOrQueries(buffInFlReader);
-			buffInFlReader.close();
-			BuildBayesianNetwork(VariablesData);
-			BuildQueriesList(QueriesData);
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
-		} catch (Exception e) {
-			e.printStackTrace();
-		} 
-	}
-	/**
-	 * 
-	 * @param buffInFlReader
-	 * @return First time being called collects the network data, Second time collects queries data.
-	 * @throws IOException
-	 */
-	private List<String> DataOfVariablesOrQueries(BufferedReader buffInFlReader) throws IOException{
-		List<String> ans = new ArrayList<>();
-		String Line = buffInFlReader.readLine();
-		while( Line != null && !Line.equals("Queries")) {
-			ans.add(Line);
-			Line = buffInFlReader.readLine();
-		}
-		return ans;
-	}
-	/**
-	 * Builds the network using factory
-	 * @param VariablesData
-	 * @throws Exception
-	 */
-	private void BuildBayesianNetwork(List<String> VariablesData) throws Exception{
-		BNT = BayesianNetworkFactory.BuildBayesNetwork(VariablesData);
-	}
-	/**
-	 * Builds the queries using factory
-	 * @param QueriesData
-	 * @throws Exception
-	 */
-	private void BuildQueriesList(List<String> QueriesData) throws Exception {
-		queriesList = QueriesFactory.BuildQueries(BNT,QueriesData);
-	}
-	/**
-	 * processes the queries and yields outupt.txt file
-	 */
-	public void processQueries() {
-		int[] operationsCount = new int[2];
-		File output = new File("output.txt");
-		PrintWriter pw = null;
-		try {
-			pw = new PrintWriter(output);
-			for(Query query:queriesList) {
-				operationsCount[0] = 0;
-				operationsCount[1] = 0;
-				double ans = query.process(operationsCount);
-				pw.println(ans+","+operationsCount[0]+","+operationsCount[1]);
-			}
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		}
-		pw.close();
-	}
-
-}
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+
+public class InputFileProcessor {
+	
+	private BayesianNetwork BNT;
+	private List<InputQuery> queriesList;
+	private QueryCache queryCache;//** Posteriors of the answered queries, null to compute every query
+	/**
+	 * Processes and builds the network and queries, or only the queries if the network was set.
+	 * @param FileName
+	 * @return true if the file was read, otherwise the error is printed
+	 */
+	public boolean ProcessFile(String FileName) {
+		try (InputParser parser = InputParser.of(Paths.get(FileName))) {
+			if(BNT == null)
+				BNT = parser.parseNetwork();
+			queriesList = parser.parseQueries(BNT);
+			return true;
+		} catch (InputFormatException e) {
+			System.err.println(FileName + ": " + e.getMessage());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+	/**
+	 * Reads the network (unless it was set), then answers the queries while reading them: each query is answered as soon as it is
+	 * read, and its answer is written and flushed as soon as every query before it is written, by the thread
+	 * that finished it if the next query has not arrived yet. At most window queries are read ahead of the
+	 * written answers, so the memory does not depend on the number of queries.
+	 * @param in the input, the network followed by the queries
+	 * @param out receives the answers in the order of the queries, it is flushed but not closed
+	 * @param executor answers the queries, if null they are answered one by one as they are read
+	 * @param window number of queries answered at once
+	 * @return true if every query was read and answered, otherwise the error is printed
+	 */
+	public boolean processStream(Reader in, Writer out, ExecutorService executor, int window) {
+		PrintWriter pw = new PrintWriter(out instanceof BufferedWriter? out : new BufferedWriter(out));
+		Deque<Future<String>> answers = new ArrayDeque<>(window);
+		InputParser parser = new InputParser(in);
+		try {
+			if(BNT == null)
+				BNT = parser.parseNetwork();
+			InputQuery query;
+			while((query = parser.nextQuery(BNT)) != null) {
+				if(executor == null) {
+					pw.println(query.answer(queryCache));
+					pw.flush();
+					continue;
+				}
+				if(sizeOf(answers) == window)
+					writeFirst(pw, answers);
+				InputQuery toAnswer = query;
+				FutureTask<String> answer = new FutureTask<String>(() -> toAnswer.answer(queryCache)) {
+					@Override
+					protected void done() {
+						//** The next query may take long to arrive, the finished answers do not wait for it
+						try {
+							writeFinished(pw, answers);
+						} catch (ExecutionException | InterruptedException e) {
+							//** Reported by the thread reading the queries, which waits for every answer
+						}
+					}
+				};
+				synchronized (answers) {
+					answers.add(answer);
+				}
+				executor.execute(answer);
+			}
+			while(writeFirst(pw, answers));
+			return true;
+		} catch (InputFormatException e) {
+			System.err.println(e.getMessage());
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			e.printStackTrace();
+		} finally {
+			List<Future<String>> left;
+			synchronized (answers) {
+				left = new ArrayList<>(answers);
+			}
+			for(Future<String> answer : left)
+				answer.cancel(true);
+			synchronized (answers) {
+				pw.flush();
+			}
+		}
+		return false;
+	}
+	/**
+	 * 
+	 * @param answers answers not written yet, in the order of the queries
+	 * @return their number
+	 */
+	private static int sizeOf(Deque<Future<String>> answers) {
+		synchronized (answers) {
+			return answers.size();
+		}
+	}
+	/**
+	 * Waits for the first answer, then writes it with the finished answers after it.
+	 * @param pw
+	 * @param answers answers not written yet, in the order of the queries
+	 * @return false if there was no answer to wait for
+	 * @throws ExecutionException if the first query failed
+	 * @throws InterruptedException
+	 */
+	private static boolean writeFirst(PrintWriter pw, Deque<Future<String>> answers)
+			throws ExecutionException, InterruptedException {
+		Future<String> first;
+		synchronized (answers) {
+			first = answers.peek();
+		}
+		if(first == null)
+			return false;
+		first.get();
+		writeFinished(pw, answers);
+		return true;
+	}
+	/**
+	 * Writes and flushes the finished answers at the head of answers, up to the first one that is not finished
+	 * or was cancelled. A failed answer is left at the head.
+	 * @param pw
+	 * @param answers answers not written yet, in the order of the queries
+	 * @throws ExecutionException if the first finished query failed
+	 * @throws InterruptedException
+	 */
+	private static void writeFinished(PrintWriter pw, Deque<Future<String>> answers)
+			throws ExecutionException, InterruptedException {
+		synchronized (answers) {
+			try {
+				while(!answers.isEmpty() && answers.peek().isDone() && !answers.peek().isCancelled()) {
+					pw.println(answers.peek().get());
+					answers.poll();
+				}
+			} finally {
+				pw.flush();
+			}
+		}
+	}
+	/**
+	 * 
+	 * @param network network of the queries, read from a network file, so the input holds only the queries
+	 */
+	public void setNetwork(BayesianNetwork network) {
+		BNT = network;
+	}
+	/**
+	 * 
+	 * @return network of the queries, null if not read yet
+	 */
+	public BayesianNetwork getNetwork() {
+		return BNT;
+	}
+	/**
+	 * 
+	 * @param queryCache posteriors shared by the queries, null to compute every query
+	 */
+	public void setQueryCache(QueryCache queryCache) {
+		this.queryCache = queryCache;
+	}
+	/**
+	 * processes the queries and yields outupt.txt file
+	 */
+	public void processQueries() {
+		processQueries(null);
+	}
+	/**
+	 * processes the queries on the executor and yields outupt.txt file, with the answers in the order of the
+	 * queries. Every query has its own operations count, and the network is only read, so they can run at once.
+	 * @param executor runs the queries (a ForkJoinPool, a fixed pool...), if null they run one by one
+	 */
+	public void processQueries(ExecutorService executor) {
+		processQueries(executor, "output.txt");
+	}
+	/**
+	 * processes the queries on the executor into the output file, with the answers in the order of the queries.
+	 * @param executor runs the queries, if null they run one by one
+	 * @param outputFileName
+	 */
+	public void processQueries(ExecutorService executor, String outputFileName) {
+		File output = new File(outputFileName);
+		PrintWriter pw = null;
+		try {
+			pw = new PrintWriter(output);
+			if(executor == null) {
+				for(InputQuery query:queriesList)
+					pw.println(query.answer(queryCache));
+			}
+			else {
+				List<Future<String>> answers = new ArrayList<>(queriesList.size());
+				for(InputQuery query:queriesList)
+					answers.add(executor.submit(() -> query.answer(queryCache)));
+				for(Future<String> answer:answers)
+					pw.println(answer.get());
+			}
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			e.printStackTrace();
+		}
+		if(pw != null)
+			pw.close();
+	}
+
+}
@@ -0,0 +1,24 @@
+import java.io.IOException;
+
+public class InputFormatException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+	private final int lineNumber;//** Number of the line of the input with the error, starting from 1
+
+	/**
+	 * @param lineNumber number of the line of the input with the error
+	 * @param message what is wrong with the line
+	 */
+	public InputFormatException(int lineNumber, String message) {
+		super("Line " + lineNumber + ": " + message);
+		this.lineNumber = lineNumber;
+	}
+
+	/**
+	 *
+	 * @return number of the line of the input with the error, starting from 1
+	 */
+	public int getLineNumber() {
+		return lineNumber;
+	}
+}
@@ -0,0 +1,275 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the network and then the queries of an input file in a single pass, one line at a time, so no part of
+ * the input is kept after it is parsed. Errors are reported as {@link InputFormatException} with the number of
+ * the line they were found on.
+ */
+public class InputParser implements Closeable {
+
+	private final BufferedReader reader;//** The input
+	private String pending;//** Line read ahead and not consumed yet, null if none
+	private int lineNumber;//** Number of the last line read from the input
+
+	/**
+	 * @param reader the input, read through a buffer
+	 */
+	public InputParser(Reader reader) {
+		this.reader = reader instanceof BufferedReader? (BufferedReader) reader : new BufferedReader(reader);
+	}
+	/**
+	 *
+	 * @param path
+	 * @return a parser of the file in UTF-8
+	 * @throws IOException
+	 */
+	public static InputParser of(Path path) throws IOException {
+		return new InputParser(Files.newBufferedReader(path, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Parses the network part of the input, up to the "Queries" line or the end of the input.
+	 * @return the compiled network
+	 * @throws IOException format error, with its line number
+	 */
+	public BayesianNetwork parseNetwork() throws IOException {
+		String Line = nextNonBlankLine();
+		if(Line == null || !Line.equals("Network"))
+			throw error("Wrong File Format! expected Network");
+		Line = nextNonBlankLine();
+		if(Line == null || !Line.startsWith("Variables: "))
+			throw error("Wrong File Format! expected Variables: followed by the names of the variables");
+		BayesianNetwork BNT = new BayesianNetwork();
+		for(String VariableName : Line.substring("Variables: ".length()).split(","))
+			BNT.AddVariable(new Variable(VariableName));
+		while((Line = nextNonBlankLine()) != null && !Line.equals("Queries")) {
+			if(!Line.startsWith("Var "))
+				throw error("Variable build error of format! expected Var followed by its name");
+			Variable tmpVar = variableNamed(BNT, Line.substring("Var ".length()));
+			Line = nextNonBlankLine();
+			if(Line == null || !Line.startsWith("Values:"))
+				throw error("Variable build error of format! expected Values:");
+			tmpVar.AddValues(Arrays.asList(Line.substring("Values:".length()).split(",")));
+			Line = nextNonBlankLine();
+			if(Line == null || !Line.startsWith("Parents: "))
+				throw error("Variable build error of format! expected Parents:");
+			if(Line.equals("Parents: none"))
+				tmpVar.AddParents(null);
+			else {
+				String[] parentsNames = Line.substring("Parents: ".length()).split(",");
+				List<Variable> varParents = new ArrayList<>(parentsNames.length);
+				for(String parentName : parentsNames)
+					varParents.add(variableNamed(BNT, parentName));
+				tmpVar.AddParents(varParents);
+			}
+			Line = nextNonBlankLine();
+			if(Line == null || !Line.startsWith("CPT:"))
+				throw error("Variable build error of format! expected CPT:");
+			while((Line = peekNonBlankLine()) != null && !Line.startsWith("Var ") && !Line.equals("Queries"))
+				parseRowOfCPT(tmpVar, nextLine());
+		}
+		//** The variables are complete, every query runs against the compiled network
+		try {
+			BNT.compile();
+		} catch (IllegalArgumentException e) {
+			throw error(e.getMessage());
+		}
+		return BNT;
+	}
+	/**
+	 * A row of the CPT is the values of the parents followed by "=value,probability" for each value of the
+	 * variable but the last, whose probability is the rest up to 1.
+	 * @param tmpVar
+	 * @param Line
+	 * @throws InputFormatException
+	 */
+	private void parseRowOfCPT(Variable tmpVar, String Line) throws InputFormatException {
+		String[] condProbOfEviAndVal = Line.split(",");//Conditional probability of evidence and values
+		int numOfValues = tmpVar.numOfValues(), numOfEvidence = condProbOfEviAndVal.length - 2*(numOfValues-1);
+		if(numOfEvidence != tmpVar.numOfParents())
+			throw error("Wrong CPT row of " + tmpVar.getName() + "! expected the values of its "
+					+ tmpVar.numOfParents() + " parents and " + (numOfValues-1) + " probabilities");
+		//** Hashing the sequence of parents values of this variable
+		String Evidence = "";
+		for (int valIndx = 0; valIndx < numOfEvidence; valIndx++) {
+			Variable parent = tmpVar.parentAt(valIndx);
+			//** A parent declared after the variable has no values yet, its values are checked when compiling
+			if(parent.numOfValues() > 0 && !parent.getValues().contains(condProbOfEviAndVal[valIndx]))
+				throw error("Wrong CPT row of " + tmpVar.getName() + "! " + condProbOfEviAndVal[valIndx]
+						+ " is not a value of " + parent.getName());
+			Evidence += condProbOfEviAndVal[valIndx] + ",";
+		}
+		double sum = 0;
+		for (int valIndx = numOfEvidence; valIndx < condProbOfEviAndVal.length; valIndx += 2) {
+			String value = condProbOfEviAndVal[valIndx];
+			if(!value.startsWith("="))
+				throw error("Wrong CPT row of " + tmpVar.getName() + "! expected =value instead of " + value);
+			if(!tmpVar.getValues().contains(value.substring(1)))
+				throw error("Wrong CPT row of " + tmpVar.getName() + "! " + value.substring(1) + " is not one of its values");
+			double probability;
+			try {
+				probability = Double.parseDouble(condProbOfEviAndVal[valIndx + 1]);
+			} catch (NumberFormatException e) {
+				throw error("Wrong CPT row of " + tmpVar.getName() + "! " + condProbOfEviAndVal[valIndx + 1]
+						+ " is not a probability");
+			}
+			sum += probability;
+			tmpVar.AddToCPT(Evidence + value.substring(1), probability);
+		}
+		tmpVar.AddToCPT(Evidence + tmpVar.getValues().get(numOfValues-1), Math.round((1-sum)*100000.0)/100000.0);
+	}
+
+	/**
+	 *
+	 * @param bnt network of the queries
+	 * @return the next query of the input, null at the end of the input
+	 * @throws IOException format error, with its line number
+	 */
+	public InputQuery nextQuery(BayesianNetwork bnt) throws IOException {
+		String Line = nextNonBlankLine();
+		//** An input of queries only may still start with the Queries line
+		if(Line != null && Line.equals("Queries"))
+			Line = nextNonBlankLine();
+		return Line == null? null : parseQuery(bnt, Line);
+	}
+	/**
+	 *
+	 * @param bnt network of the queries
+	 * @return the rest of the queries of the input
+	 * @throws IOException format error, with its line number
+	 */
+	public List<InputQuery> parseQueries(BayesianNetwork bnt) throws IOException {
+		List<InputQuery> ans = new ArrayList<>();
+		InputQuery query;
+		while((query = nextQuery(bnt)) != null)
+			ans.add(query);
+		return ans;
+	}
+	/**
+	 * A query is P(A=a|B=b,C=c),type for a single value, or P(A,D|B=b,C=c),type for the whole distribution
+	 * of several variables.
+	 * @param bnt
+	 * @param Line
+	 * @return the query of the line
+	 * @throws InputFormatException
+	 */
+	private InputQuery parseQuery(BayesianNetwork bnt, String Line) throws InputFormatException {
+		int bar = Line.indexOf('|'), close = Line.lastIndexOf("),");
+		if(!Line.startsWith("P(") || bar == -1 || close < bar)
+			throw error("Wrong query format! expected P(query|evidence),type");
+		String type = Line.substring(close + 2).trim();
+		List<Variable> observedVars = new ArrayList<>();
+		List<String> evidence = new ArrayList<>();
+		//OPE:= observed parents evidence
+		String OPE = Line.substring(bar + 1, close);
+		if(!OPE.isEmpty()) {
+			for(String varAndVal : OPE.split(",")) {
+				String[] nameAndValue = varAndVal.split("=");
+				if(nameAndValue.length != 2)
+					throw error("Wrong query format! expected variable=value instead of " + varAndVal);
+				observedVars.add(variableWithValue(bnt, nameAndValue[0], nameAndValue[1]));
+				evidence.add(nameAndValue[1]);
+			}
+		}
+		String asked = Line.substring(2, bar);
+		String[] varAndVal = asked.split("=");
+		if(varAndVal.length == 2)
+			return new Query(bnt, variableWithValue(bnt, varAndVal[0], varAndVal[1]), varAndVal[1], observedVars,
+					evidence, type);
+		if(varAndVal.length != 1)
+			throw error("Wrong query format! expected variable=value instead of " + asked);
+		List<Variable> targets = new ArrayList<>();
+		for(String name : asked.split(","))
+			targets.add(variableNamed(bnt, name));
+		return new BatchQuery(bnt, targets, observedVars, evidence, type);
+	}
+
+	/**
+	 *
+	 * @param bnt
+	 * @param name
+	 * @return the variable of the network with that name
+	 * @throws InputFormatException if there is none
+	 */
+	private Variable variableNamed(BayesianNetwork bnt, String name) throws InputFormatException {
+		Variable ans = bnt.getVarByName(name);
+		if(ans == null)
+			throw error("Unknown variable " + name);
+		return ans;
+	}
+	/**
+	 *
+	 * @param bnt
+	 * @param name
+	 * @param value
+	 * @return the variable of the network with that name
+	 * @throws InputFormatException if there is none, or value is not one of its values
+	 */
+	private Variable variableWithValue(BayesianNetwork bnt, String name, String value) throws InputFormatException {
+		Variable ans = variableNamed(bnt, name);
+		if(!ans.getValues().contains(value))
+			throw error(value + " is not a value of " + name);
+		return ans;
+	}
+	/**
+	 *
+	 * @param message
+	 * @return an error at the last line read
+	 */
+	private InputFormatException error(String message) {
+		return new InputFormatException(lineNumber, message);
+	}
+	/**
+	 *
+	 * @return the next line, null at the end of the input
+	 * @throws IOException
+	 */
+	private String nextLine() throws IOException {
+		if(pending != null) {
+			String ans = pending;
+			pending = null;
+			return ans;
+		}
+		String ans = reader.readLine();
+		if(ans != null)
+			lineNumber++;
+		return ans;
+	}
+	/**
+	 *
+	 * @return the next line that is not blank, null at the end of the input
+	 * @throws IOException
+	 */
+	private String nextNonBlankLine() throws IOException {
+		String ans = nextLine();
+		while(ans != null && ans.trim().isEmpty())
+			ans = nextLine();
+		return ans;
+	}
+	/**
+	 * Skips the blank lines.
+	 * @return the next line that is not blank without consuming it, null at the end of the input
+	 * @throws IOException
+	 */
+	private String peekNonBlankLine() throws IOException {
+		pending = nextNonBlankLine();
+		return pending;
+	}
+	/**
+	 * Closes the input.
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
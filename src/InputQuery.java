@@ -0,0 +1,9 @@
+public interface InputQuery {
+
+	/**
+	 * The query is not changed, so it can be answered by several threads at once.
+	 * @param cache posteriors of the previous queries, if null the query is always computed
+	 * @return the line of the output file answering the query
+	 */
+	String answer(QueryCache cache);
+}
@@ -0,0 +1,371 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Junction tree of a network, built once and calibrated for each evidence: the moral graph is triangulated by
+ * min-fill elimination, and the clique of each eliminated variable is joined to the clique of the first
+ * variable of its separator to be eliminated, which gives the running intersection property in time linear in
+ * the size of the cliques. A clique that is not maximal is held by one of the cliques joined to it, and takes
+ * its place in the tree. Every CPT is assigned to the smallest clique holding its family. Calibration
+ * runs Shafer-Shenoy message passing (to the root and back) over CPTXs, after which the marginal of any
+ * variable is read from the smallest clique holding it.
+ */
+public class JunctionTree {
+
+	private final CompiledNetwork model;//** Compiled network of the variables
+	private final int[][] cliques;//** Ids of the variables of each clique
+	private final BitSet[] members;//** Ids of the variables of each clique
+	private final List<List<Integer>> cliquesWith;//** Cliques holding each variable by id, ascending
+	private final List<List<Integer>> cptsOf;//** Ids of the variables whose CPT is assigned to each clique
+	private final int[] parent;//** Parent of each clique in the tree rooted at clique 0, -1 for the root
+	private final List<List<Integer>> children;//** Children of each clique in the tree
+	private final int[] order;//** Cliques in breadth first order from the root, every clique after its parent
+	private final int[] home;//** Smallest clique holding each variable by id, -1 if not in the network
+
+	/**
+	 * Builds the junction tree of network.
+	 * @param network
+	 */
+	public JunctionTree(BayesianNetwork network) {
+		model = network.getModel();
+		int idBound = model.idBound();
+		int[] noEvidence = new int[idBound];
+		Arrays.fill(noEvidence, -1);
+		MoralGraph graph = new MoralGraph(network, noEvidence);
+		List<BitSet> found = new ArrayList<>();
+		List<List<Integer>> neighbors = new ArrayList<>();
+		//** Clique holding the clique of the elimination of each variable by id, and the size of its separator
+		int[] cliqueOf = new int[idBound];
+		int[] separatorSize = new int[idBound];
+		//** Variables eliminated before each variable by id, with it in their separator and not attached yet
+		List<List<Integer>> waiting = new ArrayList<>(idBound);
+		for (int id = 0; id < idBound; id++)
+			waiting.add(new ArrayList<>());
+		boolean[] attached = new boolean[idBound];
+		int lastRoot = -1;
+		for(int v = graph.next(EliminationHeuristic.MIN_FILL, -1); v != -1; v = graph.next(EliminationHeuristic.MIN_FILL, -1)) {
+			List<Integer> separator = graph.neighbors(v);
+			//** The clique of an earlier variable is attached to the clique of the first variable of its separator
+			//** to be eliminated, and holds the clique of v if their separator is all of it
+			List<Integer> attachedHere = new ArrayList<>();
+			int holder = -1;
+			for(int u : waiting.get(v)) {
+				if(attached[u])
+					continue;
+				attached[u] = true;
+				attachedHere.add(u);
+				if(holder == -1 && separatorSize[u] == separator.size() + 1)
+					holder = u;
+			}
+			waiting.set(v, null);
+			int c;
+			if(holder != -1)
+				c = cliqueOf[holder];
+			else {
+				BitSet clique = new BitSet();
+				clique.set(v);
+				for(int u : separator)
+					clique.set(u);
+				c = found.size();
+				found.add(clique);
+				neighbors.add(new ArrayList<>());
+			}
+			cliqueOf[v] = c;
+			separatorSize[v] = separator.size();
+			for(int u : attachedHere) {
+				if(u != holder) {
+					neighbors.get(cliqueOf[u]).add(c);
+					neighbors.get(c).add(cliqueOf[u]);
+				}
+			}
+			//** The roots of the components of the moral graph are joined by empty separators
+			if(separator.isEmpty()) {
+				if(lastRoot != -1) {
+					neighbors.get(lastRoot).add(c);
+					neighbors.get(c).add(lastRoot);
+				}
+				lastRoot = c;
+			}
+			for(int u : separator)
+				waiting.get(u).add(v);
+			graph.eliminate(v);
+		}
+		int numOfCliques = found.size();
+		cliques = new int[numOfCliques][];
+		members = found.toArray(new BitSet[numOfCliques]);
+		cliquesWith = new ArrayList<>(idBound);
+		for (int id = 0; id < idBound; id++)
+			cliquesWith.add(new ArrayList<>());
+		for (int c = 0; c < numOfCliques; c++) {
+			cliques[c] = members[c].stream().toArray();
+			for(int v : cliques[c])
+				cliquesWith.get(v).add(c);
+		}
+		parent = new int[numOfCliques];
+		children = new ArrayList<>(numOfCliques);
+		for (int c = 0; c < numOfCliques; c++)
+			children.add(new ArrayList<>());
+		order = new int[numOfCliques];
+		if(numOfCliques > 0) {
+			boolean[] visited = new boolean[numOfCliques];
+			Deque<Integer> queue = new ArrayDeque<>();
+			queue.add(0);
+			visited[0] = true;
+			parent[0] = -1;
+			int i = 0;
+			while(!queue.isEmpty()) {
+				int c = queue.poll();
+				order[i++] = c;
+				for(int n : neighbors.get(c)) {
+					if(!visited[n]) {
+						visited[n] = true;
+						parent[n] = c;
+						children.get(c).add(n);
+						queue.add(n);
+					}
+				}
+			}
+		}
+		cptsOf = new ArrayList<>(numOfCliques);
+		for (int c = 0; c < numOfCliques; c++)
+			cptsOf.add(new ArrayList<>());
+		home = new int[idBound];
+		Arrays.fill(home, -1);
+		for (int i = 0; i < network.size(); i++) {
+			int id = network.varAt(i).getId();
+			cptsOf.get(smallestCliqueOf(familyOf(id))).add(id);
+			home[id] = smallestCliqueOf(new int[] {id});
+		}
+	}
+
+	/**
+	 *
+	 * @param id
+	 * @return ids of the parents of the variable followed by the variable
+	 */
+	private int[] familyOf(int id) {
+		int numOfParents = model.numOfParents(id);
+		int[] ans = new int[numOfParents + 1];
+		for (int p = 0; p < numOfParents; p++)
+			ans[p] = model.parentAt(id, p);
+		ans[numOfParents] = id;
+		return ans;
+	}
+	/**
+	 *
+	 * @param vars
+	 * @return the clique with the fewest variables holding every one of vars (the first one on ties)
+	 */
+	private int smallestCliqueOf(int[] vars) {
+		int ans = -1;
+		for(int c : cliquesWith.get(vars[vars.length - 1])) {
+			boolean holdsAll = true;
+			for(int v : vars)
+				holdsAll &= members[c].get(v);
+			if(holdsAll && (ans == -1 || cliques[c].length < cliques[ans].length))
+				ans = c;
+		}
+		return ans;
+	}
+
+	/**
+	 *
+	 * @return number of cliques of the tree
+	 */
+	public int numOfCliques() {
+		return cliques.length;
+	}
+	/**
+	 *
+	 * @return number of variables of the largest clique
+	 */
+	public int width() {
+		int ans = 0;
+		for(int[] clique : cliques)
+			ans = Math.max(ans, clique.length);
+		return ans;
+	}
+	/**
+	 * Every clique multiplies its CPTs and the messages of its neighbors over its probabilities, and sums them
+	 * out when it sends a message, on the way to the root and on the way back.
+	 * @param evidence value of each observed variable by id, -1 if hidden
+	 * @return estimated number of operations of a calibration for the evidence
+	 */
+	public double calibrationCost(int[] evidence) {
+		double ans = 0;
+		for (int c = 0; c < cliques.length; c++) {
+			double size = 1;
+			for(int v : cliques[c])
+				if(evidence[v] == -1)
+					size *= model.cardOf(v);
+			int numOfNeighbors = children.get(c).size() + (parent[c] == -1? 0 : 1);
+			ans += size * (cptsOf.get(c).size() + 2 * numOfNeighbors);
+		}
+		return ans;
+	}
+	/**
+	 *
+	 * @param evidence value of each observed variable by id, -1 if hidden
+	 * @param operationsC additions and multiplications of the message passing
+	 * @return the tree calibrated for the evidence
+	 */
+	public Calibration calibrate(int[] evidence, int[] operationsC) {
+		return new Calibration(evidence, operationsC);
+	}
+	/**
+	 *
+	 * @return the cliques of the tree, each with its parent
+	 */
+	public String toString() {
+		String ans = "";
+		for(int c : order) {
+			List<String> names = new ArrayList<>();
+			for(int v : cliques[c])
+				names.add(model.nameOf(v));
+			ans += "Clique " + c + ": " + names + (parent[c] == -1? "" : " parent " + parent[c]) + "\n";
+		}
+		return ans;
+	}
+
+	/**
+	 * Messages of the junction tree for one evidence. A null CPTX stands for a factor that is 1 everywhere
+	 * (a clique without CPTs nor incoming messages), so the marginals are only proportional to the
+	 * probabilities of the evidence.
+	 */
+	public class Calibration {
+
+		private final int[] evidence;//** Value of each observed variable by id, -1 if hidden
+		private final CPTX[] potentials;//** Product of the CPTs assigned to each clique, reduced by the evidence
+		private final CPTX[] up;//** Message from each clique to its parent
+		private final CPTX[] down;//** Message from the parent of each clique to it
+		private final CPTX[] beliefs;//** Product of the potential and the incoming messages of each clique, null until needed
+
+		private Calibration(int[] evidence, int[] operationsC) {
+			this.evidence = evidence.clone();
+			int numOfCliques = cliques.length;
+			potentials = new CPTX[numOfCliques];
+			up = new CPTX[numOfCliques];
+			down = new CPTX[numOfCliques];
+			beliefs = new CPTX[numOfCliques];
+			for (int c = 0; c < numOfCliques; c++) {
+				List<CPTX> factors = new ArrayList<>();
+				for(int id : cptsOf.get(c))
+					factors.add(FactorCache.factorOf(model, id, this.evidence));
+				potentials[c] = product(factors, operationsC);
+			}
+			for (int i = numOfCliques - 1; i > 0; i--) {
+				int c = order[i];
+				up[c] = message(c, parent[c], operationsC);
+			}
+			for (int i = 0; i < numOfCliques; i++) {
+				int c = order[i];
+				for(int child : children.get(c))
+					down[child] = message(c, child, operationsC);
+			}
+			QueryMetrics metrics = QueryMetrics.current();
+			if(metrics != null) {
+				long entries = 0;
+				for (int c = 0; c < numOfCliques; c++)
+					for(CPTX f : new CPTX[] {potentials[c], up[c], down[c]})
+						entries += f == null? 0 : f.getTable().length;
+				metrics.held(entries);
+			}
+		}
+
+		/**
+		 *
+		 * @param from
+		 * @param to a neighbor of from
+		 * @param operationsC
+		 * @return the message of clique from to its neighbor to, over their separator
+		 */
+		private CPTX message(int from, int to, int[] operationsC) {
+			List<CPTX> factors = incoming(from, to);
+			CPTX ans = product(factors, operationsC);
+			if(ans != null) {
+				if(factors.size() == 1)
+					ans = ans.copy();
+				ans.eliminateOnOtherThan(members[to], operationsC);
+			}
+			return ans;
+		}
+		/**
+		 *
+		 * @param c
+		 * @param except a neighbor of c whose message is left out, -1 to take all of them
+		 * @return the potential of c and the messages of its neighbors but except
+		 */
+		private List<CPTX> incoming(int c, int except) {
+			List<CPTX> ans = new ArrayList<>();
+			ans.add(potentials[c]);
+			if(parent[c] != -1 && parent[c] != except)
+				ans.add(down[c]);
+			for(int child : children.get(c))
+				if(child != except)
+					ans.add(up[child]);
+			ans.removeAll(Collections.singleton(null));
+			return ans;
+		}
+		/**
+		 *
+		 * @param c
+		 * @param operationsC
+		 * @return the belief of clique c, computed the first time it is needed
+		 */
+		private CPTX beliefOf(int c, int[] operationsC) {
+			if(beliefs[c] == null)
+				beliefs[c] = product(incoming(c, -1), operationsC);
+			return beliefs[c];
+		}
+		/**
+		 *
+		 * @param var id of a variable of the network
+		 * @param operationsC
+		 * @return unnormalized distribution of var given the evidence, in the order of its values
+		 */
+		public double[] marginalOf(int var, int[] operationsC) {
+			double[] ans = new double[model.cardOf(var)];
+			CPTX belief = beliefOf(home[var], operationsC);
+			if(evidence[var] != -1) {
+				for(double prob : belief.getTable())
+					ans[evidence[var]] += prob;
+				return ans;
+			}
+			CPTX marginal = belief.copy();
+			marginal.eliminateOnOtherThan(var, operationsC);
+			return marginal.getTable().clone();
+		}
+		/**
+		 *
+		 * @param operationsC
+		 * @return unnormalized distribution of every variable of the network by id, null for other ids
+		 */
+		public double[][] marginals(int[] operationsC) {
+			double[][] ans = new double[home.length][];
+			for (int id = 0; id < home.length; id++)
+				if(home[id] != -1)
+					ans[id] = marginalOf(id, operationsC);
+			return ans;
+		}
+	}
+
+	/**
+	 *
+	 * @param factors
+	 * @param operationsC
+	 * @return the product of the factors, the single factor itself if only one, null if none
+	 */
+	private static CPTX product(List<CPTX> factors, int[] operationsC) {
+		if(factors.isEmpty())
+			return null;
+		CPTX ans = factors.get(0);
+		for (int i = 1; i < factors.size(); i++)
+			ans = ans.CartasianProduct(factors.get(i), operationsC);
+		return ans;
+	}
+}
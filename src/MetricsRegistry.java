@@ -0,0 +1,118 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects the {@link QueryMetrics} of the answered queries: every one is added to named counters (totals,
+ * and maxima for the names ending with ".max"), and written as a line of JSON if the registry has a writer.
+ * The counters are shared by the threads answering the queries.
+ */
+public class MetricsRegistry implements Closeable {
+
+	private static volatile MetricsRegistry defaultRegistry;//** Registry of the answered queries, null to record nothing
+
+	private final PrintWriter jsonLines;//** Writer of a JSON line for every query, null for none
+	private final Map<String,Long> counters;//** Value of each counter by name
+
+	/**
+	 * @param jsonLines writer of a JSON line for every query, null to keep only the counters
+	 */
+	public MetricsRegistry(Writer jsonLines) {
+		this.jsonLines = jsonLines == null? null : new PrintWriter(jsonLines);
+		counters = new TreeMap<>();
+	}
+	/**
+	 *
+	 * @return the registry the metrics of the queries are sent to, null if they are not recorded
+	 */
+	public static MetricsRegistry getDefault() {
+		return defaultRegistry;
+	}
+	/**
+	 *
+	 * @param registry the registry the metrics of the queries are sent to, null to record nothing
+	 */
+	public static void setDefault(MetricsRegistry registry) {
+		defaultRegistry = registry;
+	}
+
+	/**
+	 * Adds the metrics of a query to the counters and writes them.
+	 * @param metrics
+	 */
+	public synchronized void record(QueryMetrics metrics) {
+		add("queries", 1);
+		add("queries.type." + metrics.getType(), 1);
+		add("query.nanos", metrics.getTotalNanos());
+		max("query.nanos.max", metrics.getTotalNanos());
+		for(QueryMetrics.Phase phase : QueryMetrics.Phase.values())
+			add("phase." + phase.name().toLowerCase() + ".nanos", metrics.nanosOf(phase));
+		add("joins", metrics.getJoins());
+		add("eliminations", metrics.getEliminations());
+		add("join.multiplications", metrics.getJoinMultiplications());
+		add("elimination.additions", metrics.getEliminationAdditions());
+		max("factor.largest.max", metrics.getLargestFactor());
+		max("factor.peak.bytes.max", metrics.getPeakFactorBytes());
+		add("cache.query.hits", metrics.isQueryCacheHit()? 1 : 0);
+		add("cache.factor.hits", metrics.getFactorCacheHits());
+		add("cache.factor.misses", metrics.getFactorCacheMisses());
+		add("samples", metrics.getSamples());
+		if(jsonLines != null)
+			jsonLines.println(metrics.toJson());
+	}
+	/**
+	 *
+	 * @param name
+	 * @param value
+	 */
+	private void add(String name, long value) {
+		counters.merge(name, value, Long::sum);
+	}
+	/**
+	 *
+	 * @param name
+	 * @param value
+	 */
+	private void max(String name, long value) {
+		counters.merge(name, value, Math::max);
+	}
+	/**
+	 *
+	 * @param name
+	 * @return value of the counter, 0 if nothing was added to it
+	 */
+	public synchronized long get(String name) {
+		return counters.getOrDefault(name, 0L);
+	}
+	/**
+	 *
+	 * @return a copy of every counter by name, in the order of the names
+	 */
+	public synchronized Map<String,Long> snapshot() {
+		return new TreeMap<>(counters);
+	}
+	/**
+	 * Flushes and closes the writer of the JSON lines.
+	 * @throws IOException if a line could not be written
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(jsonLines != null) {
+			jsonLines.close();
+			if(jsonLines.checkError())
+				throw new IOException("Could not write the metrics!");
+		}
+	}
+	/**
+	 * @return every counter, one per line
+	 */
+	public synchronized String toString() {
+		String ans = "Metrics:";
+		for(Map.Entry<String,Long> counter : counters.entrySet())
+			ans += "\n  " + counter.getKey() + " " + counter.getValue();
+		return ans;
+	}
+}
@@ -0,0 +1,222 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.TreeSet;
+
+public class MoralGraph {
+
+	private final int[] ids;//** Ids of the nodes (the hidden variables of the subnetwork), ascending, by position
+	private final int[] position;//** Position of each variable by id, -1 if it is not a node of the graph
+	private final List<TreeSet<Integer>> adjacent;//** Positions of the neighbors still in the graph, by position
+	private final boolean[] inGraph;//** Variables that are still nodes of the graph (not eliminated), by position
+	private final int[] cards;//** Number of values of each variable, by position
+
+	/**
+	 * Builds the moral graph of the hidden variables of subNetwork: each variable is connected to its parents
+	 * and the parents of each variable are connected to each other. Observed variables are left out, since
+	 * their factors are already restricted to the evidence.
+	 * @param subNetwork variables taking part in the inference
+	 * @param evidence value of each observed variable by id, -1 if hidden
+	 */
+	public MoralGraph(BayesianNetwork subNetwork, int[] evidence) {
+		List<Integer> hidden = new ArrayList<>();
+		for (int i = 0; i < subNetwork.size(); i++) {
+			int id = subNetwork.varAt(i).getId();
+			if(evidence[id] == -1)
+				hidden.add(id);
+		}
+		int size = hidden.size();
+		ids = new int[size];
+		for (int i = 0; i < size; i++)
+			ids[i] = hidden.get(i);
+		Arrays.sort(ids);
+		position = new int[evidence.length];
+		Arrays.fill(position, -1);
+		adjacent = new ArrayList<>(size);
+		inGraph = new boolean[size];
+		cards = new int[size];
+		for (int i = 0; i < size; i++) {
+			position[ids[i]] = i;
+			adjacent.add(new TreeSet<>());
+			inGraph[i] = true;
+		}
+		for (int i = 0; i < subNetwork.size(); i++) {
+			Variable v = subNetwork.varAt(i);
+			List<Integer> family = new ArrayList<>();
+			for (int p = 0; p < v.numOfParents(); p++) {
+				int par = position[v.parentAt(p).getId()];
+				if(par != -1)
+					family.add(par);
+			}
+			int pos = position[v.getId()];
+			if(pos != -1) {
+				family.add(pos);
+				cards[pos] = v.numOfValues();
+			}
+			connect(family);
+		}
+	}
+	/**
+	 * Builds the moral graph of a set of factors: the variables of each factor are connected to each other.
+	 * @param model compiled network of the variables
+	 * @param nodes ids of the variables of the graph
+	 * @param families ids of the variables of each factor, those that are not nodes are left out
+	 */
+	public MoralGraph(CompiledNetwork model, BitSet nodes, List<int[]> families) {
+		ids = nodes.stream().toArray();
+		int size = ids.length;
+		position = new int[model.idBound()];
+		Arrays.fill(position, -1);
+		adjacent = new ArrayList<>(size);
+		inGraph = new boolean[size];
+		cards = new int[size];
+		for (int i = 0; i < size; i++) {
+			position[ids[i]] = i;
+			adjacent.add(new TreeSet<>());
+			inGraph[i] = true;
+			cards[i] = model.cardOf(ids[i]);
+		}
+		for(int[] ofFactor : families) {
+			List<Integer> family = new ArrayList<>();
+			for(int id : ofFactor)
+				if(position[id] != -1)
+					family.add(position[id]);
+			connect(family);
+		}
+	}
+	/**
+	 * Connects the variables of family to each other.
+	 * @param family positions of the variables
+	 */
+	private void connect(List<Integer> family) {
+		for(int a : family)
+			for(int b : family)
+				if(a != b)
+					adjacent.get(a).add(b);
+	}
+
+	/**
+	 *
+	 * @param v
+	 * @return number of neighbors of v still in the graph
+	 */
+	public int degree(int v) {
+		int pos = position[v];
+		return pos == -1? 0 : adjacent.get(pos).size();
+	}
+	/**
+	 *
+	 * @param v
+	 * @return ids of the neighbors of v still in the graph, ascending
+	 */
+	public List<Integer> neighbors(int v) {
+		List<Integer> ans = new ArrayList<>();
+		int pos = position[v];
+		if(pos != -1)
+			for(int u : adjacent.get(pos))
+				ans.add(ids[u]);
+		return ans;
+	}
+	/**
+	 *
+	 * @param v
+	 * @return number of edges that eliminating v would add between its neighbors
+	 */
+	public int fillIn(int v) {
+		int pos = position[v];
+		if(pos == -1)
+			return 0;
+		int ans = 0;
+		for(int a : adjacent.get(pos))
+			for(int b : adjacent.get(pos).tailSet(a, false))
+				if(!adjacent.get(a).contains(b))
+					ans++;
+		return ans;
+	}
+	/**
+	 *
+	 * @param v
+	 * @return sum over the edges that eliminating v would add of the product of their ends' number of values
+	 */
+	public long weightedFillIn(int v) {
+		int pos = position[v];
+		if(pos == -1)
+			return 0;
+		long ans = 0;
+		for(int a : adjacent.get(pos))
+			for(int b : adjacent.get(pos).tailSet(a, false))
+				if(!adjacent.get(a).contains(b))
+					ans += (long) cards[a] * cards[b];
+		return ans;
+	}
+	/**
+	 *
+	 * @param v
+	 * @return size of the factor created when eliminating v (product of the number of values of v and its neighbors)
+	 */
+	public long weight(int v) {
+		int pos = position[v];
+		if(pos == -1)
+			return 0;
+		long ans = cards[pos];
+		for(int u : adjacent.get(pos))
+			ans *= cards[u];
+		return ans;
+	}
+	/**
+	 * Removes v from the graph, connecting all of its neighbors to each other.
+	 * @param v
+	 */
+	public void eliminate(int v) {
+		int pos = position[v];
+		if(pos == -1 || !inGraph[pos])
+			return;
+		TreeSet<Integer> neighbors = adjacent.get(pos);
+		for(int a : neighbors) {
+			TreeSet<Integer> of = adjacent.get(a);
+			of.remove(pos);
+			for(int b : neighbors)
+				if(b != a)
+					of.add(b);
+		}
+		neighbors.clear();
+		inGraph[pos] = false;
+	}
+	/**
+	 * Greedily eliminates, at each step, the variable with the lowest cost according to heuristic (the first
+	 * one with the lowest id on ties). The graph is consumed by this method.
+	 * @param heuristic
+	 * @param queryVar id of the query variable, which is kept to the end and not part of the order
+	 * @return ids of the hidden variables in the order they should be eliminated
+	 */
+	public List<Integer> eliminationOrder(EliminationHeuristic heuristic, int queryVar) {
+		List<Integer> ans = new ArrayList<>();
+		for(int best = next(heuristic, queryVar); best != -1; best = next(heuristic, queryVar)) {
+			ans.add(best);
+			eliminate(best);
+		}
+		return ans;
+	}
+	/**
+	 *
+	 * @param heuristic
+	 * @param queryVar id of the query variable, which is never chosen
+	 * @return id of the variable still in the graph with the lowest cost according to heuristic (the lowest id
+	 * on ties), -1 if only the query variable is left
+	 */
+	public int next(EliminationHeuristic heuristic, int queryVar) {
+		int best = -1;
+		long bestCost = Long.MAX_VALUE;
+		for (int pos = 0; pos < ids.length; pos++) {
+			if(!inGraph[pos] || ids[pos] == queryVar)
+				continue;
+			long cost = heuristic.cost(this, ids[pos]);
+			if(cost < bestCost) {
+				best = ids[pos];
+				bestCost = cost;
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,192 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary file of a compiled network, so it can be loaded without parsing the text format. Every number is
+ * big-endian, a string is its number of UTF-8 bytes followed by them:
+ * <pre>
+ * int MAGIC, int VERSION, int idBound
+ * int number of described variables, for each: int id, string name, int number of values, string values
+ * int number of variables of the network, in its order, for each: int id, int number of parents, int ids of the parents
+ * int number of CPT entries, zeros up to a multiple of 8 bytes from the start of the file
+ * double CPT entries, every CPT in the order of the ids, as laid out in {@link CompiledNetwork}
+ * </pre>
+ * The file is memory-mapped when read and the CPTs are read straight from the mapping, without copying them.
+ */
+public class NetworkFile {
+
+	public static final int MAGIC = 0x424E4554;//** "BNET"
+	public static final int VERSION = 1;//** Version of the layout written by this class
+
+	/**
+	 * Writes the compiled network of network to path.
+	 * @param network
+	 * @param path
+	 * @throws IOException
+	 */
+	public static void write(BayesianNetwork network, Path path) throws IOException {
+		CompiledNetwork model = network.getModel();
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(model.idBound());
+			int numOfDescribed = 0;
+			for (int id = 0; id < model.idBound(); id++)
+				if(model.nameOf(id) != null)
+					numOfDescribed++;
+			out.writeInt(numOfDescribed);
+			for (int id = 0; id < model.idBound(); id++) {
+				if(model.nameOf(id) == null)
+					continue;
+				out.writeInt(id);
+				writeString(out, model.nameOf(id));
+				out.writeInt(model.cardOf(id));
+				for (int val = 0; val < model.cardOf(id); val++)
+					writeString(out, model.valueOf(id, val));
+			}
+			out.writeInt(network.size());
+			for (int i = 0; i < network.size(); i++) {
+				int id = network.varAt(i).getId();
+				out.writeInt(id);
+				out.writeInt(model.numOfParents(id));
+				for (int p = 0; p < model.numOfParents(id); p++)
+					out.writeInt(model.parentAt(id, p));
+			}
+			out.writeInt(model.numOfEntries());
+			while(out.size() % Double.BYTES != 0)
+				out.writeByte(0);
+			for (int id = 0; id < model.idBound(); id++)
+				if(model.contains(id))
+					for (int row = 0; row < model.cptSize(id); row++)
+						out.writeDouble(model.cptAt(id, row));
+		}
+	}
+	/**
+	 * Reads a network written by {@link #write(BayesianNetwork, Path)}. The variables of the network keep
+	 * their CPTs in its compiled network, which reads them from the mapped file.
+	 * @param path
+	 * @return the compiled network
+	 * @throws IOException if the file can not be read, or is not a network file of this version
+	 */
+	public static BayesianNetwork read(Path path) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		try {
+			if(buffer.getInt() != MAGIC)
+				throw new IOException(path + " is not a network file!");
+			int version = buffer.getInt();
+			if(version != VERSION)
+				throw new IOException(path + " is a network file of version " + version + ", expected " + VERSION + "!");
+			int idBound = countAt(buffer, Integer.MAX_VALUE, path);
+			String[] names = new String[idBound];
+			String[][] values = new String[idBound][];
+			int[][] parents = new int[idBound][];
+			Variable[] vars = new Variable[idBound];
+			int numOfDescribed = countAt(buffer, idBound, path);
+			for (int i = 0; i < numOfDescribed; i++) {
+				int id = countAt(buffer, idBound - 1, path);
+				names[id] = readString(buffer, path);
+				values[id] = new String[countAt(buffer, buffer.remaining() / Integer.BYTES, path)];
+				for (int val = 0; val < values[id].length; val++)
+					values[id][val] = readString(buffer, path);
+				vars[id] = new Variable(names[id]);
+				vars[id].setId(id);
+				vars[id].AddValues(Arrays.asList(values[id]));
+			}
+			BayesianNetwork BNT = new BayesianNetwork();
+			int numOfVars = countAt(buffer, idBound, path);
+			for (int i = 0; i < numOfVars; i++) {
+				int id = idAt(buffer, vars, path);
+				parents[id] = new int[countAt(buffer, buffer.remaining() / Integer.BYTES, path)];
+				List<Variable> varParents = new ArrayList<>(parents[id].length);
+				for (int p = 0; p < parents[id].length; p++) {
+					parents[id][p] = idAt(buffer, vars, path);
+					varParents.add(vars[parents[id][p]]);
+				}
+				vars[id].AddParents(varParents.isEmpty()? null : varParents);
+				BNT.AddVariable(vars[id]);
+			}
+			int numOfEntries = buffer.getInt();
+			buffer.position(buffer.position() + (Double.BYTES - buffer.position() % Double.BYTES) % Double.BYTES);
+			if(numOfEntries < 0 || (long) numOfEntries * Double.BYTES > buffer.remaining())
+				throw new IOException(path + " is not a valid network file! " + numOfEntries + " CPT entries");
+			ByteBuffer entries = buffer.slice();
+			entries.limit(numOfEntries * Double.BYTES);
+			DoubleBuffer cpts = entries.asDoubleBuffer();
+			CompiledNetwork model = new CompiledNetwork(names, values, parents, cpts);
+			for (int i = 0; i < numOfVars; i++)
+				BNT.varAt(i).setCompiledCPT(model);
+			BNT.compile(model);
+			return BNT;
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw new IOException(path + " is not a valid network file!", e);
+		}
+	}
+	/**
+	 *
+	 * @param buffer
+	 * @param max
+	 * @param path
+	 * @return the int at the position of buffer
+	 * @throws IOException if it is not between 0 and max
+	 */
+	private static int countAt(ByteBuffer buffer, int max, Path path) throws IOException {
+		int ans = buffer.getInt();
+		if(ans < 0 || ans > max)
+			throw new IOException(path + " is not a valid network file! " + ans + " at byte " + (buffer.position() - Integer.BYTES));
+		return ans;
+	}
+	/**
+	 *
+	 * @param buffer
+	 * @param vars variable of each described id, null for the others
+	 * @param path
+	 * @return the id at the position of buffer
+	 * @throws IOException if it is not the id of a described variable
+	 */
+	private static int idAt(ByteBuffer buffer, Variable[] vars, Path path) throws IOException {
+		int ans = buffer.getInt();
+		if(ans < 0 || ans >= vars.length || vars[ans] == null)
+			throw new IOException(path + " is not a valid network file! unknown variable id " + ans);
+		return ans;
+	}
+
+	/**
+	 *
+	 * @param out
+	 * @param s
+	 * @throws IOException
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	/**
+	 *
+	 * @param buffer
+	 * @param path
+	 * @return the string at the position of buffer
+	 * @throws IOException if its length is not in the file
+	 */
+	private static String readString(ByteBuffer buffer, Path path) throws IOException {
+		byte[] bytes = new byte[countAt(buffer, buffer.remaining() - Integer.BYTES, path)];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
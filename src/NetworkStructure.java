@@ -0,0 +1,176 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class NetworkStructure {
+
+	private Map<Variable,Integer> indexes;//** Index of each variable in the network
+	private List<Variable> topologicalOrder;//** Every variable comes after its parents
+	private int[] depths;//** Depth of each variable, following the parents even outside the network
+	private List<List<Integer>> parents;//** Indexes of the parents of each variable that are in the network
+	private List<List<Integer>> children;//** Indexes of the children of each variable that are in the network
+	private BitSet[] ancestors;//** Indexes of the ancestors of each variable that are in the network
+	private int idBound;//** Greater than the id of every variable of the network and of their parents
+
+	/**
+	 * Computes the structure of the network made of vars.
+	 * @param vars variables of the network, in the network's order
+	 */
+	public NetworkStructure(List<Variable> vars) {
+		int size = vars.size();
+		indexes = new HashMap<>();
+		for (int i = 0; i < size; i++)
+			indexes.put(vars.get(i), i);
+		parents = new ArrayList<>(size);
+		children = new ArrayList<>(size);
+		for (int i = 0; i < size; i++)
+			children.add(new ArrayList<>());
+		for (int i = 0; i < size; i++) {
+			Variable v = vars.get(i);
+			List<Integer> parentsOfI = new ArrayList<>();
+			idBound = Math.max(idBound, v.getId() + 1);
+			for (int p = 0; p < v.numOfParents(); p++) {
+				idBound = Math.max(idBound, v.parentAt(p).getId() + 1);
+				Integer indx = indexes.get(v.parentAt(p));
+				if(indx != null) {
+					parentsOfI.add(indx);
+					children.get(indx).add(i);
+				}
+			}
+			parents.add(parentsOfI);
+		}
+		computeTopologicalOrder(vars);
+		Map<Variable,Integer> depthOfVar = new HashMap<>();
+		Map<Variable,BitSet> ancestorsOfVar = new HashMap<>();
+		depths = new int[size];
+		ancestors = new BitSet[size];
+		for (int i = 0; i < size; i++) {
+			depths[i] = depthOf(vars.get(i), depthOfVar);
+			ancestors[i] = ancestorsOf(vars.get(i), ancestorsOfVar);
+		}
+	}
+
+	/**
+	 * Kahn's algorithm, on ties the first variable in the network comes first.
+	 * @param vars
+	 */
+	private void computeTopologicalOrder(List<Variable> vars) {
+		int size = vars.size();
+		int[] numOfParents = new int[size];
+		Deque<Integer> ready = new ArrayDeque<>();
+		for (int i = 0; i < size; i++) {
+			numOfParents[i] = parents.get(i).size();
+			if(numOfParents[i] == 0)
+				ready.add(i);
+		}
+		List<Variable> order = new ArrayList<>(size);
+		while(!ready.isEmpty()) {
+			int i = ready.poll();
+			order.add(vars.get(i));
+			for(int c : children.get(i))
+				if(--numOfParents[c] == 0)
+					ready.add(c);
+		}
+		if(order.size() != size)
+			throw new IllegalStateException("The network has a cycle!");
+		topologicalOrder = Collections.unmodifiableList(order);
+	}
+	/**
+	 *
+	 * @param v
+	 * @param memo depths already computed
+	 * @return depth of v, 0 for a variable without parents
+	 */
+	private static int depthOf(Variable v, Map<Variable,Integer> memo) {
+		Integer ans = memo.get(v);
+		if(ans != null)
+			return ans;
+		int max = 0;
+		for (int p = 0; p < v.numOfParents(); p++)
+			max = Math.max(max, depthOf(v.parentAt(p), memo) + 1);
+		memo.put(v, max);
+		return max;
+	}
+	/**
+	 *
+	 * @param v
+	 * @param memo ancestors already computed
+	 * @return indexes of the ancestors of v that are in the network
+	 */
+	private BitSet ancestorsOf(Variable v, Map<Variable,BitSet> memo) {
+		BitSet ans = memo.get(v);
+		if(ans != null)
+			return ans;
+		ans = new BitSet();
+		for (int p = 0; p < v.numOfParents(); p++) {
+			Variable par = v.parentAt(p);
+			Integer indx = indexes.get(par);
+			if(indx != null)
+				ans.set(indx);
+			ans.or(ancestorsOf(par, memo));
+		}
+		memo.put(v, ans);
+		return ans;
+	}
+
+	/**
+	 *
+	 * @param var
+	 * @return index of var in the network, -1 if not in it
+	 */
+	public int indexOf(Variable var) {
+		Integer ans = indexes.get(var);
+		return ans == null? -1 : ans;
+	}
+	/**
+	 *
+	 * @return size of arrays indexed by the ids of the variables
+	 */
+	public int idBound() {
+		return idBound;
+	}
+	/**
+	 *
+	 * @return the variables in topological order
+	 */
+	public List<Variable> getTopologicalOrder() {
+		return topologicalOrder;
+	}
+	/**
+	 *
+	 * @param i
+	 * @return depth of the variable at index i
+	 */
+	public int depthAt(int i) {
+		return depths[i];
+	}
+	/**
+	 *
+	 * @param i
+	 * @return indexes of the parents of the variable at index i
+	 */
+	public List<Integer> parentsAt(int i) {
+		return Collections.unmodifiableList(parents.get(i));
+	}
+	/**
+	 *
+	 * @param i
+	 * @return indexes of the children of the variable at index i
+	 */
+	public List<Integer> childrenAt(int i) {
+		return Collections.unmodifiableList(children.get(i));
+	}
+	/**
+	 *
+	 * @param i
+	 * @return indexes of the ancestors of the variable at index i
+	 */
+	public BitSet ancestorsAt(int i) {
+		return (BitSet) ancestors[i].clone();
+	}
+}
@@ -0,0 +1,52 @@
+/**
+ * Arithmetic of the inference algorithms. With hundreds of variables the products of probabilities go below
+ * the smallest double and the posteriors come out as 0/0. The mode is global to the process: it is read when
+ * a query starts, so it should be set before the queries are answered, and it holds for all of them.
+ */
+public enum NumericMode {
+
+	/**
+	 * Raw doubles, the probabilities of long products may underflow to 0.
+	 */
+	PLAIN,
+	/**
+	 * Every CPTX keeps a power of two its table is multiplied by, and rescales its table after a product whose
+	 * largest probability drifted far from 1, and algorithm 1 keeps such a power of two for each product and
+	 * sum of the probabilities of the assignments. The samplers keep one with each likelihood weight, and with
+	 * each probability of the conditional distributions of Gibbs sampling. Scaling by a power of two is exact,
+	 * so the answers are the ones of PLAIN whenever PLAIN does not underflow.
+	 */
+	SCALED;
+
+	private static volatile NumericMode defaultMode = PLAIN;//** Used by the inference algorithms
+
+	/**
+	 *
+	 * @return the mode used by the inference algorithms
+	 */
+	public static NumericMode getDefault() {
+		return defaultMode;
+	}
+	/**
+	 *
+	 * @param mode the mode used by the inference algorithms
+	 */
+	public static void setDefault(NumericMode mode) {
+		defaultMode = mode;
+	}
+	/**
+	 *
+	 * @param name "plain" or "scaled"
+	 * @return the mode that goes by that name, otherwise null
+	 */
+	public static NumericMode byName(String name) {
+		switch(name) {
+		case "plain":
+			return PLAIN;
+		case "scaled":
+			return SCALED;
+		default:
+			return null;
+		}
+	}
+}
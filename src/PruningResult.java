@@ -0,0 +1,69 @@
+import java.util.ArrayList;
+import java.util.List;
+
+public class PruningResult {
+
+	private BayesianNetwork network;//** The minimal sub-network needed for the query
+	private List<Variable> barren;//** Removed since they are not ancestors of the query or evidence variables
+	private List<Variable> separated;//** Removed since their CPT is irrelevant given the evidence (d-separated)
+
+	/**
+	 * @param network
+	 * @param barren
+	 * @param separated
+	 */
+	public PruningResult(BayesianNetwork network, List<Variable> barren, List<Variable> separated) {
+		this.network = network;
+		this.barren = new ArrayList<>(barren);
+		this.separated = new ArrayList<>(separated);
+	}
+
+	/**
+	 *
+	 * @return the minimal sub-network needed for the query
+	 */
+	public BayesianNetwork getNetwork() {
+		return network;
+	}
+	/**
+	 *
+	 * @return removed variables that are not ancestors of the query or evidence variables
+	 */
+	public List<Variable> getBarren() {
+		return new ArrayList<>(barren);
+	}
+	/**
+	 *
+	 * @return removed ancestors whose CPT is irrelevant given the evidence (d-separated from the query)
+	 */
+	public List<Variable> getSeparated() {
+		return new ArrayList<>(separated);
+	}
+	/**
+	 *
+	 * @return number of removed variables
+	 */
+	public int numOfRemoved() {
+		return barren.size() + separated.size();
+	}
+	/**
+	 * @return report of the kept and removed variables
+	 */
+	public String toString() {
+		String ans = "Kept: " + namesOf(network.getCopyOfBNTK());
+		ans += " Barren: " + namesOf(barren);
+		ans += " Irrelevant: " + namesOf(separated);
+		return ans;
+	}
+	/**
+	 *
+	 * @param vars
+	 * @return names of the variables
+	 */
+	private static List<String> namesOf(List<Variable> vars) {
+		List<String> ans = new ArrayList<>(vars.size());
+		for(Variable v : vars)
+			ans.add(v.getName());
+		return ans;
+	}
+}
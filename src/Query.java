@@ -1,63 +1,242 @@
-import java.util.ArrayList;
-import java.util.List;
-
-public class Query {
-	
-	private BayesianNetwork BTN;
-	private Variable Var;
-	private String Value;
-	private List<Variable> ObservedVars;
-	private List<String> Evidence;
-	private String Type;
-	/**
-	 * Query Constructor
-	 * @param BNTK
-	 * @param variable
-	 * @param value
-	 * @param observedVars
-	 * @param evidence
-	 * @param type
-	 */
-	public Query(BayesianNetwork BNTK,Variable variable,String value,List<Variable> observedVars,
-			List<String> evidence, String type) {
-		BTN=BNTK;
-		Var=variable;
-		Value = new String(value);
-		this.ObservedVars = new ArrayList<>(observedVars);
-		this.Evidence = new ArrayList<>(evidence);
-		Type = new String(type);
-	}
-	/**
-	 * 
-	 * @param operationsCount in first cell counts summarizing operations 
-	 * and the second for counting the multiplying operations
-	 * @return answer of the query
-	 */
-	public double process(int[] operationsCount) {
-		double ans = 1;
-		if(Type.equals("1")) {
-			ObservedVars.add(0, Var);
-			Evidence.add(0,Value);
-			return Variable.probabilityOfNoFactoring(BTN,Var, ObservedVars, Evidence, operationsCount);
-		}
-		else if(Type.equals("2")) {
-			return Variable.varEli(BTN,Var, Value, ObservedVars, Evidence, operationsCount);
-		}
-		else if(Type.equals("3")) {
-			return Variable.bestOrderOfNetWork(BTN,Var, Value, ObservedVars, Evidence, operationsCount);
-		}
-		return ans;
-	}
-	/**
-	 * @return query as String.
-	 */
-	public String toString() {
-		String ans = new String("P(");
-		ans += Var.getName() +"="+ Value +"|";
-		for (int i = 0; i < ObservedVars.size(); i++) {
-			ans+=ObservedVars.get(i).getName() +"="+ Evidence.get(i)+",";
-		}
-		ans = ans.substring(0, ans.length()-1) + "),"+Type;
-		return ans;
-	}
-}
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class Query implements InputQuery {
+	
+	private final BayesianNetwork BTN;
+	private final Variable Var;
+	private final String Value;
+	private final List<Variable> ObservedVars;
+	private final List<String> Evidence;
+	private final String Type;
+	/**
+	 * Query Constructor
+	 * @param BNTK
+	 * @param variable
+	 * @param value
+	 * @param observedVars
+	 * @param evidence
+	 * @param type
+	 */
+	public Query(BayesianNetwork BNTK,Variable variable,String value,List<Variable> observedVars,
+			List<String> evidence, String type) {
+		BTN=BNTK;
+		Var=variable;
+		Value = new String(value);
+		this.ObservedVars = new ArrayList<>(observedVars);
+		this.Evidence = new ArrayList<>(evidence);
+		Type = new String(type);
+	}
+	/**
+	 * 
+	 * @param type
+	 * @return the same query, answered by the algorithm of type
+	 */
+	public Query withType(String type) {
+		return new Query(BTN, Var, Value, ObservedVars, Evidence, type);
+	}
+	/**
+	 * The query is not changed, so it can be processed by several threads at once.
+	 * @param operationsCount in first cell counts summarizing operations 
+	 * and the second for counting the multiplying operations
+	 * @return answer of the query
+	 */
+	public double process(int[] operationsCount) {
+		return process(operationsCount, null);
+	}
+	/**
+	 * Looks for the posterior of the query variable in cache before computing it. On a hit the operations
+	 * counted when the posterior was computed are reported, so the output does not depend on the cache.
+	 * @param operationsCount in first cell counts summarizing operations 
+	 * and the second for counting the multiplying operations
+	 * @param cache posteriors of the previous queries, if null the query is always computed
+	 * @return answer of the query
+	 */
+	public double process(int[] operationsCount, QueryCache cache) {
+		double ans = 1;
+		if(!isKnownType(Type))
+			return ans;
+		QueryPlanner.Plan plan = plan();
+		String type = plan == null? Type : plan.getType();
+		return round(posterior(operationsCount, cache, type, plan == null? null : plan.getOrder()),
+				Var.getValues().indexOf(Value), type);
+	}
+	/**
+	 * 
+	 * @param operationsCount
+	 * @param cache posteriors of the previous queries, if null the query is always computed
+	 * @return the probability of each value of the query variable, rounded as the answer of the query
+	 */
+	public double[] distribution(int[] operationsCount, QueryCache cache) {
+		double[] ans = new double[Var.numOfValues()];
+		if(!isKnownType(Type)) {
+			Arrays.fill(ans, 1);
+			return ans;
+		}
+		QueryPlanner.Plan plan = plan();
+		String type = plan == null? Type : plan.getType();
+		double[] posterior = posterior(operationsCount, cache, type, plan == null? null : plan.getOrder());
+		for (int i = 0; i < ans.length; i++)
+			ans[i] = round(posterior, i, type);
+		return ans;
+	}
+	/**
+	 * 
+	 * @param cache posteriors of the previous queries, if null the query is always computed
+	 * @return the answer of the query followed by its number of additions and multiplications, the answer is
+	 * NaN (and the error is printed to the error stream) if a sampling algorithm weighted every sample by 0
+	 */
+	public String answer(QueryCache cache) {
+		int[] operationsCount = new int[2];
+		QueryMetrics metrics = QueryMetrics.begin(this, Type);
+		double ans;
+		try {
+			ans = process(operationsCount, cache);
+		} catch (ArithmeticException e) {
+			System.err.println(this + ": " + e.getMessage());
+			ans = Double.NaN;
+		} finally {
+			if(metrics != null)
+				metrics.end(operationsCount);
+		}
+		return ans+","+operationsCount[0]+","+operationsCount[1];
+	}
+	/**
+	 * 
+	 * @param type
+	 * @return true if type is one of the algorithms a query can be answered by, or auto
+	 */
+	public static boolean isKnownType(String type) {
+		return type.equals("1") || type.equals("2") || type.equals("3") || type.equals("4")
+				|| type.equals("5") || type.equals("6") || type.equals("auto") || EliminationHeuristic.byName(type) != null;
+	}
+	/**
+	 * 
+	 * @return the plan the query would be answered by if its type were auto
+	 */
+	public QueryPlanner.Plan explain() {
+		return QueryPlanner.plan(BTN, Var, ObservedVars, Evidence);
+	}
+	/**
+	 * The plan of an auto query is printed if the planner explains its plans, and its time goes to the
+	 * ordering phase of the metrics since it chooses the elimination order.
+	 * @return the plan the query is answered by, null unless the type of the query is auto
+	 */
+	private QueryPlanner.Plan plan() {
+		if(!Type.equals("auto"))
+			return null;
+		QueryMetrics metrics = QueryMetrics.current();
+		long start = metrics == null? 0 : System.nanoTime();
+		QueryPlanner.Plan plan = explain();
+		if(metrics != null)
+			metrics.time(QueryMetrics.Phase.ORDERING, start);
+		PrintStream out = QueryPlanner.getExplain();
+		if(out != null)
+			out.println(this + " " + plan);
+		return plan;
+	}
+	/**
+	 * 
+	 * @param operationsCount
+	 * @param cache
+	 * @param type algorithm of the query
+	 * @param order elimination order chosen by the planner for a heuristic, null to choose it when needed
+	 * @return unnormalized distribution of the query variable, from cache if it is there
+	 */
+	private double[] posterior(int[] operationsCount, QueryCache cache, String type, List<Integer> order) {
+		if(cache == null)
+			return posterior(operationsCount, type, order);
+		QueryCache.Key key = QueryCache.keyOf(BTN.getModel(), Var.getId(), ObservedVars, Evidence, type);
+		double[] ans = cache.get(key, operationsCount);
+		QueryMetrics metrics = QueryMetrics.current();
+		if(metrics != null && ans != null)
+			metrics.queryCacheHit();
+		if(ans == null) {
+			int[] computed = new int[2];
+			ans = posterior(computed, type, order);
+			cache.put(key, ans, computed);
+			operationsCount[0] += computed[0];
+			operationsCount[1] += computed[1];
+		}
+		return ans;
+	}
+	/**
+	 * 
+	 * @param posterior
+	 * @param value
+	 * @param type algorithm of the query
+	 * @return the probability of value rounded to 5 digits, normalized the way the algorithm of the query does
+	 */
+	private double round(double[] posterior, int value, String type) {
+		if(type.equals("1"))
+			return Variable.normalizeOfNoFactoring(posterior, value);
+		return Variable.normalize(posterior, value);
+	}
+	/**
+	 * 
+	 * @param operationsCount
+	 * @param type algorithm of the query
+	 * @param order elimination order chosen by the planner for a heuristic, null to choose it when needed
+	 * @return unnormalized distribution of the query variable, computed by the algorithm of type
+	 */
+	private double[] posterior(int[] operationsCount, String type, List<Integer> order) {
+		if(type.equals("1"))
+			return Variable.posteriorOfNoFactoring(BTN, Var, ObservedVars, Evidence, operationsCount);
+		else if(type.equals("2"))
+			return Variable.varEliPosterior(BTN, Var, ObservedVars, Evidence, operationsCount);
+		else if(type.equals("3"))
+			return Variable.bestOrderOfNetWorkPosterior(BTN, Var, ObservedVars, Evidence, operationsCount);
+		else if(type.equals("4"))
+			return Variable.junctionTreePosterior(BTN, Var, ObservedVars, Evidence, operationsCount);
+		else if(type.equals("5") || type.equals("6"))
+			return sample(operationsCount, type);
+		return Variable.varEliByHeuristicPosterior(BTN, Var, ObservedVars, Evidence, EliminationHeuristic.byName(type), order,
+				operationsCount);
+	}
+	/**
+	 * The confidence interval of the estimate goes to the metrics of the query, and is printed with the plans
+	 * of the planner if it explains them.
+	 * @param operationsCount
+	 * @param type "5" for likelihood weighting, "6" for Gibbs sampling
+	 * @return the sum of the weights of the samples of each value of the query variable
+	 */
+	private double[] sample(int[] operationsCount, String type) {
+		Sampler sampler = Sampler.getDefault();
+		int[] evidence = BTN.evidenceOf(ObservedVars, Evidence);
+		Sampler.Estimate estimate = type.equals("5")? sampler.likelihoodWeighting(BTN, Var.getId(), evidence, operationsCount)
+				: sampler.gibbs(BTN, Var.getId(), evidence, operationsCount);
+		QueryMetrics metrics = QueryMetrics.current();
+		if(metrics != null)
+			metrics.sampled(estimate.getNumOfSamples(), estimate.getHalfWidths());
+		PrintStream out = QueryPlanner.getExplain();
+		if(out != null)
+			out.println(withType(type) + " " + estimate);
+		return estimate.getWeights();
+	}
+	public Variable getVariable() {
+		return Var;
+	}
+	public List<Variable> getObservedVars() {
+		return Collections.unmodifiableList(ObservedVars);
+	}
+	public List<String> getEvidence() {
+		return Collections.unmodifiableList(Evidence);
+	}
+	/**
+	 * @return query as String.
+	 */
+	public String toString() {
+		String ans = new String("P(");
+		ans += Var.getName() +"="+ Value +"|";
+		for (int i = 0; i < ObservedVars.size(); i++) {
+			ans+=ObservedVars.get(i).getName() +"="+ Evidence.get(i)+",";
+		}
+		if(!ObservedVars.isEmpty())
+			ans = ans.substring(0, ans.length()-1);
+		ans += "),"+Type;
+		return ans;
+	}
+}
@@ -0,0 +1,162 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class QueryCache {
+
+	private final int capacity;//** Maximal number of posteriors kept, the least recently used is dropped first
+	private final LinkedHashMap<Key,Posterior> entries;//** Cached posteriors in access order
+	private long hits;//** Number of lookups that found their posterior
+	private long misses;//** Number of lookups that had to compute their posterior
+
+	/**
+	 * @param capacity maximal number of posteriors kept
+	 */
+	public QueryCache(int capacity) {
+		if(capacity < 1)
+			throw new IllegalArgumentException("The capacity of the cache must be positive!");
+		this.capacity = capacity;
+		entries = new LinkedHashMap<Key,Posterior>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key,Posterior> eldest) {
+				return size() > QueryCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Key of a posterior: the compiled network, the query variable, the algorithm and the evidence sorted by
+	 * the ids of the observed variables, so the order of the evidence in the query does not matter. The value
+	 * of the query variable is not part of the key, every value of it shares the same posterior.
+	 * @param model
+	 * @param var id of the query variable
+	 * @param observedVars
+	 * @param evidence
+	 * @param type algorithm of the query
+	 * @return the key
+	 */
+	public static Key keyOf(CompiledNetwork model, int var, List<Variable> observedVars, List<String> evidence,
+			String type) {
+		long[] pairs = new long[observedVars.size()];
+		for (int i = 0; i < pairs.length; i++) {
+			Variable v = observedVars.get(i);
+			pairs[i] = ((long) v.getId() << 32) | (v.getValues().indexOf(evidence.get(i)) & 0xffffffffL);
+		}
+		Arrays.sort(pairs);
+		return new Key(model, var, pairs, type);
+	}
+	/**
+	 *
+	 * @param key
+	 * @param operationsC the operations counted when the posterior was computed are added to it
+	 * @return the cached posterior, null if not in the cache
+	 */
+	public synchronized double[] get(Key key, int[] operationsC) {
+		Posterior entry = entries.get(key);
+		if(entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		operationsC[0] += entry.additions;
+		operationsC[1] += entry.multiplications;
+		return entry.posterior;
+	}
+	/**
+	 * Keeps the posterior, dropping the least recently used one if the cache is full.
+	 * @param key
+	 * @param posterior unnormalized distribution of the query variable, not changed afterwards
+	 * @param operationsC operations counted when computing the posterior
+	 */
+	public synchronized void put(Key key, double[] posterior, int[] operationsC) {
+		entries.put(key, new Posterior(posterior, operationsC[0], operationsC[1]));
+	}
+	/**
+	 *
+	 * @return number of lookups that found their posterior
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+	/**
+	 *
+	 * @return number of lookups that had to compute their posterior
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+	/**
+	 *
+	 * @return number of cached posteriors
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+	/**
+	 * Drops every posterior and resets the statistics.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		hits = 0;
+		misses = 0;
+	}
+	/**
+	 * @return the statistics of the cache
+	 */
+	public synchronized String toString() {
+		long lookups = hits + misses;
+		return "Query cache: " + hits + " hits, " + misses + " misses, hit rate "
+				+ (lookups == 0? 0 : Math.round(hits * 1000.0 / lookups) / 10.0) + "%, "
+				+ entries.size() + "/" + capacity + " posteriors";
+	}
+
+	public static final class Key {
+
+		private final CompiledNetwork model;//** Compared by identity, each network compiles its own model
+		private final int var;//** Id of the query variable
+		private final long[] evidence;//** Id of each observed variable in the high half, index of its value in the low half
+		private final String type;//** Algorithm of the query
+		private final int hash;
+
+		private Key(CompiledNetwork model, int var, long[] evidence, String type) {
+			this.model = model;
+			this.var = var;
+			this.evidence = evidence;
+			this.type = type;
+			int h = System.identityHashCode(model);
+			h = 31 * h + var;
+			h = 31 * h + Arrays.hashCode(evidence);
+			hash = 31 * h + type.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj)
+				return true;
+			if(!(obj instanceof Key))
+				return false;
+			Key o = (Key) obj;
+			return model == o.model && var == o.var && hash == o.hash && type.equals(o.type)
+					&& Arrays.equals(evidence, o.evidence);
+		}
+	}
+
+	private static final class Posterior {
+
+		private final double[] posterior;//** Unnormalized distribution of the query variable
+		private final int additions;//** Additions counted when computing the posterior
+		private final int multiplications;//** Multiplications counted when computing the posterior
+
+		private Posterior(double[] posterior, int additions, int multiplications) {
+			this.posterior = posterior;
+			this.additions = additions;
+			this.multiplications = multiplications;
+		}
+	}
+}
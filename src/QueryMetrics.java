@@ -0,0 +1,290 @@
+/**
+ * What answering one query cost, phase by phase. While a query is answered its metrics are the current ones
+ * of the thread answering it, and the inference algorithms and the CPTX operations add to them; they only
+ * look for them when a {@link MetricsRegistry} is set, so the algorithms pay nothing otherwise. The counts of
+ * the joins and eliminations are longs, unlike the int operations count of the answer, so they are right for
+ * queries whose count overflows.
+ * <p>
+ * The additions and multiplications are the operations count of the answer, except for algorithm 1: its answer
+ * reports the operations of the full enumeration, as the output format requires, while {@link Enumeration} only
+ * sums what it has not summed before, so its metrics have the operations it actually did.
+ */
+public class QueryMetrics {
+
+	/**
+	 * Parts of the inference the time is split into.
+	 */
+	public enum Phase {
+		PRUNING,//** Removing the variables the query does not depend on
+		ORDERING,//** Choosing the elimination order, building the junction tree, or laying out the sums of algorithm 1
+		FACTORS,//** Building the CPTXs reduced by the evidence, or taking them from the factor cache
+		JOINS,//** Products of CPTXs
+		ELIMINATIONS,//** Summing variables out of CPTXs
+		ENUMERATION//** Summing the products of the CPTs over the assignments of the hidden variables, by algorithm 1
+	}
+
+	private static final ThreadLocal<QueryMetrics> current = new ThreadLocal<>();//** Metrics of the query answered by each thread
+
+	private final String query;//** The query as in the input
+	private final String type;//** Algorithm of the query
+	private final long begin;//** Time the query began at, in nanoseconds
+	private final long[] nanos = new long[Phase.values().length];//** Time of each phase
+	private long totalNanos;//** Time of the whole query, -1 until it ends
+	private long joins;//** Number of products of CPTXs
+	private long eliminations;//** Number of times variables were summed out of a CPTX
+	private long joinMultiplications;//** Multiplications of the products
+	private long eliminationAdditions;//** Additions of the eliminations
+	private long largestFactor;//** Number of probabilities of the largest CPTX made by a product or an elimination
+	private long peakFactorEntries;//** Largest number of probabilities of the CPTXs held at once by the algorithm
+	private boolean queryCacheHit;//** True if the posterior came from the query cache
+	private long factorCacheHits;//** CPTXs taken from the factor cache
+	private long factorCacheMisses;//** CPTXs built from the CPTs while a factor cache is set
+	private long samples;//** Samples drawn by a sampling algorithm
+	private double[] halfWidths;//** Half width of the 95% confidence interval of each value, null if not sampled
+	private long additions;//** Additions reported as the answer, or counted by the algorithm
+	private long multiplications;//** Multiplications reported as the answer, or counted by the algorithm
+	private boolean counted;//** True if the algorithm counted its operations, which are not the ones of the answer
+
+	private QueryMetrics(String query, String type) {
+		this.query = query;
+		this.type = type;
+		begin = System.nanoTime();
+		totalNanos = -1;
+	}
+
+	/**
+	 * Starts recording the metrics of a query on the calling thread, if a registry is set.
+	 * @param query
+	 * @param type
+	 * @return the metrics of the query, null if none are recorded
+	 */
+	public static QueryMetrics begin(InputQuery query, String type) {
+		if(MetricsRegistry.getDefault() == null)
+			return null;
+		QueryMetrics ans = new QueryMetrics(query.toString(), type);
+		current.set(ans);
+		return ans;
+	}
+	/**
+	 * Stops recording on the calling thread and sends the metrics to the registry. Must be called even if the
+	 * query fails (in a finally block), or the metrics would stay current on the thread for its next query.
+	 * @param operationsC operations reported as the answer of the query, kept unless the algorithm counted its own
+	 */
+	public void end(int[] operationsC) {
+		totalNanos = System.nanoTime() - begin;
+		if(!counted) {
+			additions = operationsC[0];
+			multiplications = operationsC[1];
+		}
+		current.remove();
+		MetricsRegistry registry = MetricsRegistry.getDefault();
+		if(registry != null)
+			registry.record(this);
+	}
+	/**
+	 *
+	 * @return the metrics of the query answered by the calling thread, null if none are recorded
+	 */
+	public static QueryMetrics current() {
+		return MetricsRegistry.getDefault() == null? null : current.get();
+	}
+
+	/**
+	 * Adds the time since start to phase.
+	 * @param phase
+	 * @param start value of System.nanoTime() when the phase started
+	 */
+	public void time(Phase phase, long start) {
+		nanos[phase.ordinal()] += System.nanoTime() - start;
+	}
+	/**
+	 * Records a product of CPTXs.
+	 * @param entries number of probabilities of the product, one multiplication each
+	 * @param start value of System.nanoTime() when the product started
+	 */
+	public void joined(long entries, long start) {
+		time(Phase.JOINS, start);
+		joins++;
+		joinMultiplications += entries;
+		largestFactor = Math.max(largestFactor, entries);
+	}
+	/**
+	 * Records variables summed out of a CPTX.
+	 * @param entries number of probabilities of the CPTX before the elimination
+	 * @param reducedEntries number of probabilities after it
+	 * @param start value of System.nanoTime() when the elimination started
+	 */
+	public void eliminated(long entries, long reducedEntries, long start) {
+		time(Phase.ELIMINATIONS, start);
+		eliminations++;
+		eliminationAdditions += entries - reducedEntries;
+		largestFactor = Math.max(largestFactor, reducedEntries);
+	}
+	/**
+	 * Records the operations the algorithm actually did, when they are not the ones reported as the answer.
+	 * @param additions
+	 * @param multiplications
+	 */
+	public void counted(long additions, long multiplications) {
+		this.additions += additions;
+		this.multiplications += multiplications;
+		counted = true;
+	}
+	/**
+	 * Records the number of probabilities of the CPTXs the algorithm holds at this point.
+	 * @param entries
+	 */
+	public void held(long entries) {
+		peakFactorEntries = Math.max(peakFactorEntries, entries);
+	}
+	/**
+	 * Records a lookup of the factor cache.
+	 * @param hit
+	 */
+	public void factorCacheLookup(boolean hit) {
+		if(hit)
+			factorCacheHits++;
+		else
+			factorCacheMisses++;
+	}
+	/**
+	 * Records the estimate of a sampling algorithm.
+	 * @param numOfSamples samples drawn
+	 * @param halfWidths half width of the 95% confidence interval of the probability of each value
+	 */
+	public void sampled(long numOfSamples, double[] halfWidths) {
+		samples += numOfSamples;
+		this.halfWidths = halfWidths;
+	}
+	/**
+	 * Records that the posterior came from the query cache.
+	 */
+	public void queryCacheHit() {
+		queryCacheHit = true;
+	}
+
+	public String getQuery() {
+		return query;
+	}
+	public String getType() {
+		return type;
+	}
+	/**
+	 *
+	 * @param phase
+	 * @return time of the phase in nanoseconds
+	 */
+	public long nanosOf(Phase phase) {
+		return nanos[phase.ordinal()];
+	}
+	/**
+	 *
+	 * @return time of the whole query in nanoseconds, -1 if it did not end yet
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+	public long getJoins() {
+		return joins;
+	}
+	public long getEliminations() {
+		return eliminations;
+	}
+	public long getJoinMultiplications() {
+		return joinMultiplications;
+	}
+	public long getEliminationAdditions() {
+		return eliminationAdditions;
+	}
+	public long getLargestFactor() {
+		return largestFactor;
+	}
+	/**
+	 *
+	 * @return largest number of bytes of the probabilities of the CPTXs held at once
+	 */
+	public long getPeakFactorBytes() {
+		return peakFactorEntries * Double.BYTES;
+	}
+	public boolean isQueryCacheHit() {
+		return queryCacheHit;
+	}
+	public long getFactorCacheHits() {
+		return factorCacheHits;
+	}
+	public long getFactorCacheMisses() {
+		return factorCacheMisses;
+	}
+	public long getSamples() {
+		return samples;
+	}
+	/**
+	 *
+	 * @return half width of the 95% confidence interval of the probability of each value of the last sampled
+	 * variable, null if no variable was sampled
+	 */
+	public double[] getHalfWidths() {
+		return halfWidths == null? null : halfWidths.clone();
+	}
+	public long getAdditions() {
+		return additions;
+	}
+	public long getMultiplications() {
+		return multiplications;
+	}
+
+	/**
+	 *
+	 * @return the metrics as a single line JSON object
+	 */
+	public String toJson() {
+		StringBuilder ans = new StringBuilder("{\"query\":");
+		appendString(ans, query);
+		ans.append(",\"type\":");
+		appendString(ans, type);
+		ans.append(",\"totalNanos\":").append(totalNanos);
+		for(Phase phase : Phase.values())
+			ans.append(",\"").append(phase.name().toLowerCase()).append("Nanos\":").append(nanosOf(phase));
+		ans.append(",\"joins\":").append(joins);
+		ans.append(",\"eliminations\":").append(eliminations);
+		ans.append(",\"joinMultiplications\":").append(joinMultiplications);
+		ans.append(",\"eliminationAdditions\":").append(eliminationAdditions);
+		ans.append(",\"largestFactor\":").append(largestFactor);
+		ans.append(",\"peakFactorBytes\":").append(getPeakFactorBytes());
+		ans.append(",\"queryCacheHit\":").append(queryCacheHit);
+		ans.append(",\"factorCacheHits\":").append(factorCacheHits);
+		ans.append(",\"factorCacheMisses\":").append(factorCacheMisses);
+		if(halfWidths != null) {
+			ans.append(",\"samples\":").append(samples).append(",\"halfWidths\":[");
+			for (int i = 0; i < halfWidths.length; i++)
+				ans.append(i == 0? "" : ",").append(Double.isNaN(halfWidths[i])? "null" : Double.toString(halfWidths[i]));
+			ans.append(']');
+		}
+		ans.append(",\"additions\":").append(additions);
+		ans.append(",\"multiplications\":").append(multiplications);
+		return ans.append('}').toString();
+	}
+	/**
+	 * Appends s as a JSON string.
+	 * @param ans
+	 * @param s
+	 */
+	private static void appendString(StringBuilder ans, String s) {
+		ans.append('"');
+		for(char c : s.toCharArray()) {
+			if(c == '"' || c == '\\')
+				ans.append('\\').append(c);
+			else if(c < ' ')
+				ans.append(String.format("\\u%04x", (int) c));
+			else
+				ans.append(c);
+		}
+		ans.append('"');
+	}
+	/**
+	 * @return the metrics as JSON
+	 */
+	public String toString() {
+		return toJson();
+	}
+}
@@ -0,0 +1,223 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chooses the algorithm of the queries of type "auto": the cost of each candidate is estimated from the
+ * numbers of values of the variables, without computing any probability, and the cheapest one answers the
+ * query.
+ * <ul>
+ * <li>Enumeration (type 1) lays out its sums as {@link Enumeration} does, and counts the sums it keeps once
+ * for each assignment of their frontier. It is ruled out without laying them out when it would have to
+ * visit more values of the hidden variables than the cheapest candidate costs.</li>
+ * <li>Variable elimination by a heuristic order is costed while the order is chosen on the moral graph of
+ * the pruned network: eliminating a variable costs a product and a sum over its neighbors and itself, and
+ * the largest such clique gives the induced width. The order of the chosen heuristic goes with the plan, so
+ * it is not chosen again when the query is answered.</li>
+ * <li>The junction tree (type 4) costs a calibration for the evidence once the tree of the network is built,
+ * and the tree is only built when type 4 is chosen. Before that, its cliques are taken to be those of the
+ * min-fill elimination, which are the cliques of a tree over the pruned network, with messages passed both
+ * ways over them.</li>
+ * </ul>
+ * Types 2 and 3 are not candidates, they eliminate in the fixed order of the network and the heuristic orders
+ * are estimated instead.
+ */
+public class QueryPlanner {
+
+	private static final String[] CANDIDATES = {"min-fill", "min-degree", "weighted-min-fill", "min-weight", "4", "1"};//** In the order ties are broken, min-fill before 4 and 1 last
+
+	private static volatile PrintStream explain;//** Where the plan of every auto query is printed, null for nowhere
+
+	/**
+	 *
+	 * @return where the plan of every auto query is printed, null if it is not
+	 */
+	public static PrintStream getExplain() {
+		return explain;
+	}
+	/**
+	 *
+	 * @param out where the plan of every auto query is printed, null to print nothing
+	 */
+	public static void setExplain(PrintStream out) {
+		explain = out;
+	}
+
+	/**
+	 *
+	 * @param network
+	 * @param var query variable
+	 * @param observedVars
+	 * @param evidence
+	 * @return the estimated cost of every candidate, and the cheapest one
+	 */
+	public static Plan plan(BayesianNetwork network, Variable var, List<Variable> observedVars, List<String> evidence) {
+		int[] evidenceById = network.evidenceOf(observedVars, evidence);
+		double[] costs = new double[CANDIDATES.length];
+		int[] widths = new int[CANDIDATES.length];
+		List<List<Integer>> orders = new ArrayList<>(CANDIDATES.length);
+		BayesianNetwork pruned = null;
+		for (int i = 0; i < CANDIDATES.length; i++) {
+			String type = CANDIDATES[i];
+			EliminationHeuristic heuristic = EliminationHeuristic.byName(type);
+			List<Integer> order = null;
+			if(heuristic != null) {
+				if(pruned == null)
+					pruned = network.prune(var, observedVars).getNetwork();
+				order = eliminationCost(network.getModel(), pruned, var.getId(), evidenceById, heuristic, costs, widths, i);
+			}
+			else if(type.equals("4")) {
+				JunctionTree tree = network.getJunctionTreeIfBuilt();
+				if(tree != null) {
+					costs[i] = tree.calibrationCost(evidenceById);
+					widths[i] = tree.width() - 1;
+				}
+				else {
+					//** The cliques of min-fill, the first candidate, each sending a message up and one down
+					costs[i] = 2 * costs[0];
+					widths[i] = widths[0];
+				}
+			}
+			else
+				enumerationCost(network, var.getId(), evidenceById, min(costs, i), costs, widths, i);
+			orders.add(order);
+		}
+		int best = 0;
+		for (int i = 1; i < CANDIDATES.length; i++)
+			if(costs[i] < costs[best])
+				best = i;
+		return new Plan(CANDIDATES[best], costs, widths, orders.get(best));
+	}
+	/**
+	 *
+	 * @param costs
+	 * @param n
+	 * @return the lowest of the first n costs
+	 */
+	private static double min(double[] costs, int n) {
+		double ans = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < n; i++)
+			ans = Math.min(ans, costs[i]);
+		return ans;
+	}
+	/**
+	 * The sums of algorithm 1 are laid out as it answers the query, without computing any of them, unless
+	 * visiting every value of every hidden variable once for each value of the query variable already costs
+	 * more than bound.
+	 * @param network
+	 * @param queryVar id of the query variable
+	 * @param evidence value of each observed variable by id, -1 if hidden
+	 * @param bound cost of the cheapest candidate so far
+	 * @param costs the estimated cost is set at i, infinity if it is ruled out
+	 * @param widths the number of hidden variables is set at i
+	 * @param i
+	 */
+	private static void enumerationCost(BayesianNetwork network, int queryVar, int[] evidence, double bound,
+			double[] costs, int[] widths, int i) {
+		CompiledNetwork model = network.getModel();
+		int numOfHidden = 0;
+		double values = 0;
+		for (int v = 0; v < network.size(); v++) {
+			int id = network.varAt(v).getId();
+			if(evidence[id] == -1) {
+				numOfHidden++;
+				if(id != queryVar)
+					values += model.cardOf(id);
+			}
+		}
+		widths[i] = numOfHidden;
+		if(values * model.cardOf(queryVar) >= bound)
+			costs[i] = Double.POSITIVE_INFINITY;
+		else
+			costs[i] = new Enumeration(network, queryVar, evidence).cost();
+	}
+	/**
+	 * Chooses the elimination order of heuristic on the moral graph of the pruned network, and costs each
+	 * elimination before it is done.
+	 * @param model
+	 * @param pruned variables taking part in the inference
+	 * @param queryVar id of the query variable
+	 * @param evidence value of each observed variable by id, -1 if hidden
+	 * @param heuristic
+	 * @param costs the estimated cost is set at i
+	 * @param widths the induced width is set at i
+	 * @param i
+	 * @return ids of the hidden variables in the order heuristic eliminates them
+	 */
+	private static List<Integer> eliminationCost(CompiledNetwork model, BayesianNetwork pruned, int queryVar,
+			int[] evidence, EliminationHeuristic heuristic, double[] costs, int[] widths, int i) {
+		MoralGraph graph = new MoralGraph(pruned, evidence);
+		List<Integer> order = new ArrayList<>();
+		double cost = 0;
+		int width = 0;
+		for(int v = graph.next(heuristic, queryVar); v != -1; v = graph.next(heuristic, queryVar)) {
+			order.add(v);
+			List<Integer> neighbors = graph.neighbors(v);
+			double size = model.cardOf(v);
+			for(int u : neighbors)
+				size *= model.cardOf(u);
+			cost += 2 * size;
+			width = Math.max(width, neighbors.size());
+			graph.eliminate(v);
+		}
+		costs[i] = cost + model.cardOf(queryVar);
+		widths[i] = width;
+		return order;
+	}
+
+	/**
+	 * Estimated cost of every candidate, and the cheapest one.
+	 */
+	public static class Plan {
+
+		private final String type;//** The cheapest candidate
+		private final double[] costs;//** Estimated number of operations of each candidate
+		private final int[] widths;//** Induced width of each candidate, the number of hidden variables for enumeration
+		private final List<Integer> order;//** Elimination order of the cheapest candidate, null if it is not a heuristic
+
+		private Plan(String type, double[] costs, int[] widths, List<Integer> order) {
+			this.type = type;
+			this.costs = costs;
+			this.widths = widths;
+			this.order = order;
+		}
+
+		/**
+		 *
+		 * @return type of the cheapest algorithm
+		 */
+		public String getType() {
+			return type;
+		}
+		/**
+		 *
+		 * @return ids of the hidden variables in the order the cheapest heuristic eliminates them, null if the
+		 * cheapest candidate is not a heuristic
+		 */
+		public List<Integer> getOrder() {
+			return order;
+		}
+		/**
+		 *
+		 * @param type one of the candidates
+		 * @return its estimated number of operations, infinity if it was ruled out, -1 if it is not a candidate
+		 */
+		public double costOf(String type) {
+			for (int i = 0; i < CANDIDATES.length; i++)
+				if(CANDIDATES[i].equals(type))
+					return costs[i];
+			return -1;
+		}
+		/**
+		 * @return the chosen type, then every candidate with its estimated cost and induced width
+		 */
+		public String toString() {
+			String ans = "plan: " + type;
+			for (int i = 0; i < CANDIDATES.length; i++)
+				ans += "\n  " + CANDIDATES[i] + (CANDIDATES[i].equals(type)? " *" : "") + ": "
+						+ (Double.isInfinite(costs[i])? "ruled out" : "cost " + String.format("%.3g", costs[i]))
+						+ (CANDIDATES[i].equals("1")? ", hidden " : ", width ") + widths[i];
+			return ans;
+		}
+	}
+}
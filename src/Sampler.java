@@ -0,0 +1,498 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Approximate inference by sampling the network in topological order, for networks whose exact elimination is
+ * too large. The samples are split into a fixed number of chunks, each with its own random generator split
+ * from the seed, so with a sample budget the estimate does not depend on how many threads run the chunks.
+ * With a time budget every chunk stops at the deadline.
+ */
+public class Sampler {
+
+	public static final int NUM_OF_CHUNKS = 16;//** Chunks of samples (chains for Gibbs sampling) run independently
+	private static final int BATCHES_PER_CHAIN = 10;//** Batches of each Gibbs chain, for the batch means of the interval
+	private static final double Z_95 = 1.959963984540054;//** Quantile of the normal distribution for 95% intervals
+	private static volatile Sampler defaultSampler = new Sampler(100000, 0, 1, false);//** Used by queries of type 5 and 6
+
+	private final long numOfSamples;//** Samples to draw in all, (sweeps after burn-in for Gibbs sampling)
+	private final long timeLimitMillis;//** Time after which sampling stops, 0 for no limit
+	private final long seed;//** Seed of the random generators of the chunks
+	private final boolean parallel;//** True to run the chunks on the common fork-join pool
+
+	/**
+	 * @param numOfSamples samples to draw in all
+	 * @param timeLimitMillis time after which sampling stops with the samples drawn so far, 0 for no limit
+	 * @param seed seed of the random generators
+	 * @param parallel true to run the chunks of samples on several threads
+	 */
+	public Sampler(long numOfSamples, long timeLimitMillis, long seed, boolean parallel) {
+		if(numOfSamples < NUM_OF_CHUNKS)
+			throw new IllegalArgumentException("At least " + NUM_OF_CHUNKS + " samples are needed!");
+		this.numOfSamples = numOfSamples;
+		this.timeLimitMillis = timeLimitMillis;
+		this.seed = seed;
+		this.parallel = parallel;
+	}
+	/**
+	 *
+	 * @return the sampler of the queries of type 5 and 6
+	 */
+	public static Sampler getDefault() {
+		return defaultSampler;
+	}
+	/**
+	 *
+	 * @param sampler the sampler of the queries of type 5 and 6
+	 */
+	public static void setDefault(Sampler sampler) {
+		defaultSampler = sampler;
+	}
+
+	/**
+	 * Likelihood weighting: every sample draws the hidden variables from their CPTs in topological order and
+	 * is weighted by the probability of the evidence given its parents. With a lot of evidence the weights go
+	 * below the smallest double, in NumericMode.SCALED each weight keeps a power of two as the CPTXs do.
+	 * @param network
+	 * @param var id of the query variable
+	 * @param evidence value of each observed variable by id, -1 if hidden
+	 * @param operationsC multiplications of the weights and additions of the tallies
+	 * @return the estimate of the distribution of var
+	 * @throws ArithmeticException if every sample has weight 0
+	 */
+	public Estimate likelihoodWeighting(BayesianNetwork network, int var, int[] evidence, int[] operationsC) {
+		CompiledNetwork model = network.getModel();
+		boolean scaled = NumericMode.getDefault() == NumericMode.SCALED;
+		int[] order = topologicalOrder(network);
+		long deadline = deadline();
+		List<Tally> tallies = runChunks(chunk -> {
+			SplittableRandom random = randomOf(chunk);
+			Tally tally = new Tally(model.cardOf(var), 1);
+			int[] assignment = evidence.clone();
+			for (long s = 0; s < samplesOf(chunk) && !expired(deadline, s); s++) {
+				double weight = 1;
+				int weightScale = 0;
+				for(int id : order) {
+					if(evidence[id] != -1) {
+						weight *= model.probability(id, assignment);
+						tally.multiplications++;
+						if(scaled && weight != 0 && Math.getExponent(weight) < -CPTX.MAX_DRIFT) {
+							int exponent = Math.getExponent(weight);
+							weight = Math.scalb(weight, -exponent);
+							weightScale += exponent;
+						}
+					}
+					else
+						assignment[id] = draw(model, id, assignment, random);
+				}
+				tally.add(0, assignment[var], weight, weightScale);
+			}
+			return tally;
+		});
+		return estimateOf(tallies, operationsC);
+	}
+	/**
+	 * Gibbs sampling: every chain starts from a sample of the network with the evidence, and each sweep draws
+	 * every hidden variable in topological order given its Markov blanket. The first tenth of the sweeps of each
+	 * chain are a burn-in, each later sweep counts the value of the query variable. A variable with many children
+	 * has a conditional distribution whose products go below the smallest double, in NumericMode.SCALED each
+	 * product keeps a power of two and they are brought to the largest one before drawing.
+	 * @param network
+	 * @param var id of the query variable
+	 * @param evidence value of each observed variable by id, -1 if hidden
+	 * @param operationsC multiplications and additions of the conditional distributions
+	 * @return the estimate of the distribution of var
+	 * @throws ArithmeticException if no sweep was counted before the time limit
+	 */
+	public Estimate gibbs(BayesianNetwork network, int var, int[] evidence, int[] operationsC) {
+		CompiledNetwork model = network.getModel();
+		int[] order = topologicalOrder(network);
+		List<List<Integer>> children = childrenOf(network, model);
+		boolean scaled = NumericMode.getDefault() == NumericMode.SCALED;
+		long deadline = deadline();
+		List<Tally> tallies = runChunks(chunk -> {
+			SplittableRandom random = randomOf(chunk);
+			long sweeps = samplesOf(chunk), burnIn = sweeps / 10, batchSize = Math.max(1, sweeps / BATCHES_PER_CHAIN);
+			Tally tally = new Tally(model.cardOf(var), (int) ((sweeps + batchSize - 1) / batchSize));
+			int[] assignment = evidence.clone();
+			for(int id : order)
+				if(evidence[id] == -1)
+					assignment[id] = draw(model, id, assignment, random);
+			double[] probs = new double[maxCardOf(model, order)];
+			int[] exponents = new int[probs.length];
+			for (long s = -burnIn; s < sweeps && !expired(deadline, s + burnIn); s++) {
+				for(int id : order) {
+					if(evidence[id] != -1)
+						continue;
+					int card = model.cardOf(id);
+					double sum = 0;
+					for (int val = 0; val < card; val++) {
+						assignment[id] = val;
+						double prob = model.probability(id, assignment);
+						int exponent = 0;
+						for(int child : children.get(id)) {
+							prob *= model.probability(child, assignment);
+							if(scaled && prob != 0 && Math.getExponent(prob) < -CPTX.MAX_DRIFT) {
+								exponent += Math.getExponent(prob);
+								prob = Math.scalb(prob, -Math.getExponent(prob));
+							}
+						}
+						probs[val] = prob;
+						exponents[val] = exponent;
+						sum += prob;
+					}
+					if(scaled)
+						sum = align(probs, exponents, card);
+					tally.multiplications += card * children.get(id).size();
+					tally.additions += card - 1;
+					assignment[id] = drawFrom(probs, card, sum, random);
+				}
+				if(s >= 0)
+					tally.add((int) (s / batchSize), assignment[var], 1);
+			}
+			return tally;
+		});
+		return estimateOf(tallies, operationsC);
+	}
+
+	/**
+	 * Estimate of a posterior distribution from samples.
+	 */
+	public static class Estimate {
+
+		private final double[] weights;//** Sum of the weights of the samples of each value
+		private final double[] posterior;//** Estimated probability of each value
+		private final double[] halfWidths;//** Half width of the 95% confidence interval of each probability
+		private final long numOfSamples;//** Samples drawn
+
+		private Estimate(double[] weights, double[] posterior, double[] halfWidths, long numOfSamples) {
+			this.weights = weights;
+			this.posterior = posterior;
+			this.halfWidths = halfWidths;
+			this.numOfSamples = numOfSamples;
+		}
+
+		/**
+		 *
+		 * @return sum of the weights of the samples of each value, an unnormalized distribution
+		 */
+		public double[] getWeights() {
+			return weights.clone();
+		}
+		/**
+		 *
+		 * @return estimated probability of each value
+		 */
+		public double[] getPosterior() {
+			return posterior.clone();
+		}
+		/**
+		 *
+		 * @return half width of the 95% confidence interval of each probability
+		 */
+		public double[] getHalfWidths() {
+			return halfWidths.clone();
+		}
+		/**
+		 *
+		 * @return number of samples drawn
+		 */
+		public long getNumOfSamples() {
+			return numOfSamples;
+		}
+		/**
+		 * @return each probability with its 95% confidence interval
+		 */
+		public String toString() {
+			String ans = "";
+			for (int val = 0; val < posterior.length; val++)
+				ans += (val == 0? "" : ", ") + posterior[val] + " +- " + halfWidths[val];
+			return "[" + ans + "] from " + numOfSamples + " samples";
+		}
+	}
+
+	/**
+	 * Weighted counts of the values of the query variable in a chunk, in batches.
+	 */
+	private static class Tally {
+
+		private final double[][] sumW;//** Sum of the weights of each value in each batch, times 2^-scale
+		private final double[] sumW2;//** Sum of the squared weights of each value, times 2^-2scale
+		private int scale;//** Power of two of the largest weight counted so far, always 0 in NumericMode.PLAIN
+		private boolean weighted;//** True once a sample with a weight other than 0 is counted
+		private long samples;//** Samples counted
+		private long multiplications;//** Multiplications done by the chunk
+		private long additions;//** Additions done by the chunk
+
+		private Tally(int card, int numOfBatches) {
+			sumW = new double[numOfBatches][card];
+			sumW2 = new double[card];
+		}
+
+		private void add(int batch, int value, double weight) {
+			add(batch, value, weight, 0);
+		}
+		/**
+		 *
+		 * @param batch
+		 * @param value
+		 * @param weight the weight of the sample times 2^-weightScale
+		 * @param weightScale
+		 */
+		private void add(int batch, int value, double weight, int weightScale) {
+			if(weight != 0) {
+				if(!weighted || weightScale > scale)
+					rescale(weightScale);
+				weight = Math.scalb(weight, weightScale - scale);
+				weighted = true;
+			}
+			sumW[batch][value] += weight;
+			sumW2[value] += weight * weight;
+			samples++;
+			additions++;
+		}
+		/**
+		 * Multiplies the sums by 2^(scale - to), the weights they hold stay the same.
+		 * @param to the new power of two of the sums
+		 */
+		private void rescale(int to) {
+			int shift = scale - to;
+			for(double[] batch : sumW)
+				for (int val = 0; val < batch.length; val++)
+					batch[val] = Math.scalb(batch[val], shift);
+			for (int val = 0; val < sumW2.length; val++)
+				sumW2[val] = Math.scalb(sumW2[val], 2 * shift);
+			scale = to;
+		}
+	}
+
+	/**
+	 * Merges the tallies of the chunks. With one batch per chunk (likelihood weighting), the variance of each
+	 * ratio estimate comes from the squared weights; with several batches (Gibbs sampling) it comes from the
+	 * spread of the estimates of the batches. The sums of the tallies are first brought to the largest power of
+	 * two among them.
+	 * @param tallies
+	 * @param operationsC
+	 * @return the estimate
+	 * @throws ArithmeticException if every sample has weight 0
+	 */
+	private static Estimate estimateOf(List<Tally> tallies, int[] operationsC) {
+		int card = tallies.get(0).sumW2.length;
+		int maxScale = Integer.MIN_VALUE;
+		for(Tally tally : tallies)
+			if(tally.weighted)
+				maxScale = Math.max(maxScale, tally.scale);
+		for(Tally tally : tallies)
+			if(tally.weighted && tally.scale != maxScale)
+				tally.rescale(maxScale);
+		double[] weights = new double[card], sumW2 = new double[card];
+		long samples = 0, multiplications = 0, additions = 0;
+		List<double[]> batches = new ArrayList<>();
+		for(Tally tally : tallies) {
+			for(double[] batch : tally.sumW) {
+				for (int val = 0; val < card; val++)
+					weights[val] += batch[val];
+				batches.add(batch);
+			}
+			for (int val = 0; val < card; val++)
+				sumW2[val] += tally.sumW2[val];
+			samples += tally.samples;
+			multiplications += tally.multiplications;
+			additions += tally.additions;
+		}
+		operationsC[0] = saturatedAdd(operationsC[0], additions);
+		operationsC[1] = saturatedAdd(operationsC[1], multiplications);
+		double total = 0, totalW2 = 0;
+		for (int val = 0; val < card; val++) {
+			total += weights[val];
+			totalW2 += sumW2[val];
+		}
+		if(total == 0)
+			throw new ArithmeticException(samples == 0? "No sample was drawn!" : "Every one of the " + samples
+					+ " samples has weight 0, the evidence is impossible or its probability underflowed"
+					+ (NumericMode.getDefault() == NumericMode.PLAIN? " (try NumericMode.SCALED)!" : "!"));
+		double[] posterior = new double[card], halfWidths = new double[card];
+		boolean batchMeans = tallies.get(0).sumW.length > 1;
+		for (int val = 0; val < card; val++) {
+			posterior[val] = weights[val] / total;
+			double variance;
+			if(!batchMeans)
+				variance = (sumW2[val] * (1 - 2 * posterior[val]) + posterior[val] * posterior[val] * totalW2) / (total * total);
+			else {
+				double spread = 0;
+				int numOfBatches = 0;
+				for(double[] batch : batches) {
+					double size = 0;
+					for(double w : batch)
+						size += w;
+					if(size == 0)
+						continue;
+					double diff = batch[val] - posterior[val] * size;
+					spread += diff * diff;
+					numOfBatches++;
+				}
+				variance = numOfBatches < 2? Double.NaN : spread / (total * total) * numOfBatches / (numOfBatches - 1);
+			}
+			halfWidths[val] = Z_95 * Math.sqrt(Math.max(0, variance));
+		}
+		return new Estimate(weights, posterior, halfWidths, samples);
+	}
+
+	/**
+	 *
+	 * @param chunk
+	 * @return the tally of each chunk, run one after another or in parallel
+	 */
+	private List<Tally> runChunks(IntFunction<Tally> chunk) {
+		IntStream chunks = IntStream.range(0, NUM_OF_CHUNKS);
+		if(parallel)
+			chunks = chunks.parallel();
+		return chunks.mapToObj(chunk).collect(Collectors.toList());
+	}
+	/**
+	 *
+	 * @param chunk
+	 * @return the random generator of the chunk, the same for the same seed
+	 */
+	private SplittableRandom randomOf(int chunk) {
+		SplittableRandom root = new SplittableRandom(seed);
+		for (int c = 0; c < chunk; c++)
+			root.split();
+		return root.split();
+	}
+	/**
+	 *
+	 * @param chunk
+	 * @return number of samples of the chunk
+	 */
+	private long samplesOf(int chunk) {
+		return numOfSamples / NUM_OF_CHUNKS + (chunk < numOfSamples % NUM_OF_CHUNKS? 1 : 0);
+	}
+	/**
+	 *
+	 * @return the time sampling stops at in nanoseconds, or Long.MAX_VALUE if no limit
+	 */
+	private long deadline() {
+		return timeLimitMillis == 0? Long.MAX_VALUE : System.nanoTime() + timeLimitMillis * 1000000L;
+	}
+	/**
+	 * The clock is only read every 1024 samples, and every chunk draws at least one sample.
+	 * @param deadline
+	 * @param s samples drawn so far by the chunk
+	 * @return true if sampling should stop
+	 */
+	private static boolean expired(long deadline, long s) {
+		return deadline != Long.MAX_VALUE && s > 0 && (s & 1023) == 0 && System.nanoTime() - deadline > 0;
+	}
+	/**
+	 *
+	 * @param network
+	 * @return ids of the variables of the network in topological order
+	 */
+	private static int[] topologicalOrder(BayesianNetwork network) {
+		List<Variable> order = network.getStructure().getTopologicalOrder();
+		int[] ans = new int[order.size()];
+		for (int i = 0; i < ans.length; i++)
+			ans[i] = order.get(i).getId();
+		return ans;
+	}
+	/**
+	 *
+	 * @param network
+	 * @param model
+	 * @return ids of the children of each variable by id
+	 */
+	private static List<List<Integer>> childrenOf(BayesianNetwork network, CompiledNetwork model) {
+		List<List<Integer>> ans = new ArrayList<>(model.idBound());
+		for (int id = 0; id < model.idBound(); id++)
+			ans.add(new ArrayList<>());
+		for (int i = 0; i < network.size(); i++) {
+			int id = network.varAt(i).getId();
+			for (int p = 0; p < model.numOfParents(id); p++)
+				ans.get(model.parentAt(id, p)).add(id);
+		}
+		return ans;
+	}
+	/**
+	 *
+	 * @param model
+	 * @param order
+	 * @return the largest number of values of the variables
+	 */
+	private static int maxCardOf(CompiledNetwork model, int[] order) {
+		int ans = 1;
+		for(int id : order)
+			ans = Math.max(ans, model.cardOf(id));
+		return ans;
+	}
+	/**
+	 *
+	 * @param model
+	 * @param id
+	 * @param assignment values of the parents of the variable
+	 * @param random
+	 * @return a value of the variable drawn from its CPT given its parents
+	 */
+	private static int draw(CompiledNetwork model, int id, int[] assignment, SplittableRandom random) {
+		int card = model.cardOf(id), last = card - 1;
+		double u = random.nextDouble();
+		for (int val = 0; val < last; val++) {
+			assignment[id] = val;
+			u -= model.probability(id, assignment);
+			if(u < 0)
+				return val;
+		}
+		return last;
+	}
+	/**
+	 * Brings the probabilities to the largest power of two among them.
+	 * @param probs unnormalized probability of each value, times 2^-exponents
+	 * @param exponents
+	 * @param card
+	 * @return sum of the probabilities
+	 */
+	private static double align(double[] probs, int[] exponents, int card) {
+		int maxExponent = Integer.MIN_VALUE;
+		for (int val = 0; val < card; val++)
+			if(probs[val] != 0)
+				maxExponent = Math.max(maxExponent, exponents[val]);
+		double sum = 0;
+		for (int val = 0; val < card; val++) {
+			if(probs[val] != 0)
+				probs[val] = Math.scalb(probs[val], exponents[val] - maxExponent);
+			sum += probs[val];
+		}
+		return sum;
+	}
+	/**
+	 *
+	 * @param probs unnormalized probability of each value
+	 * @param card
+	 * @param sum sum of the probabilities
+	 * @param random
+	 * @return a value drawn from probs, a uniform one if they are all 0
+	 */
+	private static int drawFrom(double[] probs, int card, double sum, SplittableRandom random) {
+		if(sum <= 0)
+			return random.nextInt(card);
+		double u = random.nextDouble() * sum;
+		for (int val = 0; val < card - 1; val++) {
+			u -= probs[val];
+			if(u < 0)
+				return val;
+		}
+		return card - 1;
+	}
+	/**
+	 *
+	 * @param count
+	 * @param add
+	 * @return count + add, or Integer.MAX_VALUE if it does not fit
+	 */
+	private static int saturatedAdd(int count, long add) {
+		return (int) Math.min(Integer.MAX_VALUE, count + add);
+	}
+}
@@ -0,0 +1,82 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Checks the confidence intervals of {@link Sampler} against the exact posteriors of an input file. It only
+ * reads the network and the queries, so the sampler itself stays free of any command line.
+ */
+public class SamplerCheck {
+
+	/**
+	 * Checks the 95% confidence intervals of likelihood weighting and Gibbs sampling against the exact
+	 * posterior of the junction tree, for every distinct single value query of an input file. Every query is
+	 * sampled from several seeds, each interval that misses the exact probability of a value is printed, then
+	 * the share of the intervals of each type that hold it. About one in twenty intervals should miss, the
+	 * check exits with status 1 if more than one in ten do.
+	 * @param args "-in FILE" the input file (Inputs/input1.txt by default), "-samples N" of the sampler, and
+	 * "-seeds N" seeds from "-seed S" on (20 from 1 by default)
+	 */
+	public static void main(String[] args) {
+		String in = "Inputs/input1.txt";
+		long samples = 100000, seed = 1;
+		int numOfSeeds = 20;
+		for (int i = 0; i + 1 < args.length; i++) {
+			if(args[i].equals("-in"))
+				in = args[++i];
+			else if(args[i].equals("-samples"))
+				samples = Long.parseLong(args[++i]);
+			else if(args[i].equals("-seed"))
+				seed = Long.parseLong(args[++i]);
+			else if(args[i].equals("-seeds"))
+				numOfSeeds = Integer.parseInt(args[++i]);
+		}
+		String[] types = {"5", "6"};
+		int[] checked = new int[types.length], held = new int[types.length];
+		try (InputParser parser = InputParser.of(Paths.get(in))) {
+			BayesianNetwork network = parser.parseNetwork();
+			Set<String> seen = new HashSet<>();
+			for(InputQuery input : parser.parseQueries(network)) {
+				if(!(input instanceof Query))
+					continue;
+				Query query = (Query) input;
+				if(!seen.add(query.withType("").toString()))
+					continue;
+				Variable var = query.getVariable();
+				int[] evidence = network.evidenceOf(query.getObservedVars(), query.getEvidence());
+				double[] exact = network.posteriors(Collections.singletonList(var), query.getObservedVars(),
+						query.getEvidence(), new int[2]).get(var);
+				for (long s = seed; s < seed + numOfSeeds; s++) {
+					Sampler sampler = new Sampler(samples, 0, s, false);
+					for (int t = 0; t < types.length; t++) {
+						Sampler.Estimate estimate = types[t].equals("5")? sampler.likelihoodWeighting(network, var.getId(), evidence, new int[2])
+								: sampler.gibbs(network, var.getId(), evidence, new int[2]);
+						double[] posterior = estimate.getPosterior(), halfWidths = estimate.getHalfWidths();
+						boolean holds = true;
+						for (int val = 0; val < exact.length; val++)
+							holds &= Math.abs(posterior[val] - exact[val]) <= halfWidths[val];
+						checked[t]++;
+						if(holds)
+							held[t]++;
+						else
+							System.out.println(query.withType(types[t]) + " seed " + s + " " + estimate + " misses "
+									+ Arrays.toString(exact));
+					}
+				}
+			}
+		} catch (IOException e) {
+			System.err.println(in + ": " + e.getMessage());
+			System.exit(2);
+		}
+		boolean enough = true;
+		for (int t = 0; t < types.length; t++) {
+			System.out.println("type " + types[t] + ": " + held[t] + " of " + checked[t] + " intervals hold the exact posterior");
+			enough &= held[t] * 10 >= checked[t] * 9;
+		}
+		if(!enough)
+			System.exit(1);
+	}
+}
@@ -0,0 +1,364 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Random networks of known shapes, to measure the algorithms on networks larger than the input files. The
+ * variables are named X0, X1, ... and added in topological order, their values are v0, v1, ... and every
+ * probability of their CPTs has 4 digits, the last value of each row taking the rest up to 1 as in the input
+ * files. The same arguments and seed always give the same network. The networks and queries can be written in
+ * the format of the input files, to run ex1 on networks as large as needed.
+ */
+public class SyntheticNetworks {
+
+	/**
+	 * X0 -> X1 -> ... -> Xn-1.
+	 * @param numOfVars
+	 * @param card number of values of every variable
+	 * @param seed
+	 * @return the compiled network
+	 */
+	public static BayesianNetwork chain(int numOfVars, int card, long seed) {
+		int[][] parents = new int[numOfVars][];
+		for (int i = 0; i < numOfVars; i++)
+			parents[i] = i == 0? new int[0] : new int[] {i - 1};
+		return build(parents, card, new Random(seed));
+	}
+	/**
+	 * A network with no cycle even when its edges are undirected: every variable takes its parents from
+	 * distinct connected parts of the variables before it.
+	 * @param numOfVars
+	 * @param maxParents
+	 * @param card number of values of every variable
+	 * @param seed
+	 * @return the compiled network
+	 */
+	public static BayesianNetwork polytree(int numOfVars, int maxParents, int card, long seed) {
+		Random random = new Random(seed);
+		int[][] parents = new int[numOfVars][];
+		int[] component = new int[numOfVars];
+		for (int i = 0; i < numOfVars; i++) {
+			component[i] = i;
+			List<Integer> candidates = new ArrayList<>(i);
+			for (int j = 0; j < i; j++)
+				candidates.add(j);
+			Collections.shuffle(candidates, random);
+			List<Integer> chosen = new ArrayList<>();
+			int numOfParents = i == 0? 0 : 1 + random.nextInt(maxParents);
+			for (int j : candidates) {
+				if(chosen.size() == numOfParents)
+					break;
+				boolean sameComponent = false;
+				for (int p : chosen)
+					sameComponent |= rootOf(component, p) == rootOf(component, j);
+				if(!sameComponent)
+					chosen.add(j);
+			}
+			for (int p : chosen)
+				component[rootOf(component, p)] = i;
+			parents[i] = toSortedArray(chosen);
+		}
+		return build(parents, card, random);
+	}
+	/**
+	 * Variables in rows, each one with the variable above it and the one to its left as parents.
+	 * @param rows
+	 * @param columns
+	 * @param card number of values of every variable
+	 * @param seed
+	 * @return the compiled network
+	 */
+	public static BayesianNetwork grid(int rows, int columns, int card, long seed) {
+		int[][] parents = new int[rows * columns][];
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < columns; c++) {
+				List<Integer> chosen = new ArrayList<>(2);
+				if(r > 0)
+					chosen.add((r - 1) * columns + c);
+				if(c > 0)
+					chosen.add(r * columns + c - 1);
+				parents[r * columns + c] = toSortedArray(chosen);
+			}
+		}
+		return build(parents, card, new Random(seed));
+	}
+	/**
+	 * Every variable takes up to maxParents parents among the window variables before it, so the treewidth
+	 * of the network is at most window.
+	 * @param numOfVars
+	 * @param maxParents
+	 * @param window
+	 * @param card number of values of every variable
+	 * @param seed
+	 * @return the compiled network
+	 */
+	public static BayesianNetwork randomDag(int numOfVars, int maxParents, int window, int card, long seed) {
+		Random random = new Random(seed);
+		int[][] parents = new int[numOfVars][];
+		for (int i = 0; i < numOfVars; i++) {
+			List<Integer> candidates = new ArrayList<>();
+			for (int j = Math.max(0, i - window); j < i; j++)
+				candidates.add(j);
+			Collections.shuffle(candidates, random);
+			int numOfParents = Math.min(candidates.size(), random.nextInt(maxParents + 1));
+			parents[i] = toSortedArray(candidates.subList(0, numOfParents));
+		}
+		return build(parents, card, random);
+	}
+	/**
+	 * A query of a random variable given random values of numOfEvidence other variables.
+	 * @param network
+	 * @param numOfEvidence
+	 * @param type
+	 * @param random
+	 * @return the query, for the first value of its variable
+	 */
+	public static Query randomQuery(BayesianNetwork network, int numOfEvidence, String type, Random random) {
+		List<Variable> vars = network.getCopyOfBNTK();
+		Collections.shuffle(vars, random);
+		Variable var = vars.get(0);
+		List<Variable> observedVars = new ArrayList<>(vars.subList(1, Math.min(vars.size(), numOfEvidence + 1)));
+		List<String> evidence = new ArrayList<>(observedVars.size());
+		for (Variable observed : observedVars)
+			evidence.add(observed.getValues().get(random.nextInt(observed.getValues().size())));
+		return new Query(network, var, var.getValues().get(0), observedVars, evidence, type);
+	}
+
+	/**
+	 * A query of each type in turn, every one for a random variable given random values of numOfEvidence other
+	 * variables.
+	 * @param network
+	 * @param numOfQueries
+	 * @param numOfEvidence
+	 * @param types
+	 * @param seed
+	 * @return the queries
+	 */
+	public static List<Query> randomQueries(BayesianNetwork network, int numOfQueries, int numOfEvidence,
+			String[] types, long seed) {
+		Random random = new Random(seed);
+		List<Query> ans = new ArrayList<>(numOfQueries);
+		for (int i = 0; i < numOfQueries; i++)
+			ans.add(randomQuery(network, numOfEvidence, types[i % types.length], random));
+		return ans;
+	}
+	/**
+	 * Writes the network and the queries in the format of the input files.
+	 * @param network
+	 * @param queries
+	 * @param out
+	 */
+	public static void write(BayesianNetwork network, List<? extends InputQuery> queries, PrintWriter out) {
+		out.println("Network");
+		String names = "";
+		for (int i = 0; i < network.size(); i++)
+			names += (i == 0? "" : ",") + network.varAt(i).getName();
+		out.println("Variables: " + names);
+		for (int i = 0; i < network.size(); i++) {
+			Variable var = network.varAt(i);
+			List<String> values = var.getValues();
+			out.println();
+			out.println("Var " + var.getName());
+			out.println("Values: " + String.join(",", values));
+			String parents = "";
+			for (int p = 0; p < var.numOfParents(); p++)
+				parents += (p == 0? "" : ",") + var.parentAt(p).getName();
+			out.println("Parents: " + (parents.isEmpty()? "none" : parents));
+			out.println("CPT:");
+			Map<String,Double> CPT = var.getCPT();
+			int[] assignment = new int[var.numOfParents()];
+			do {
+				String Evidence = "";
+				for (int p = 0; p < assignment.length; p++)
+					Evidence += var.parentAt(p).getValues().get(assignment[p]) + ",";
+				String row = Evidence;
+				for (int val = 0; val < values.size() - 1; val++)
+					row += (val == 0? "" : ",") + "=" + values.get(val) + "," + CPT.get(Evidence + values.get(val));
+				out.println(row);
+			} while(next(var, assignment));
+		}
+		out.println();
+		out.println("Queries");
+		for(InputQuery query : queries)
+			out.println(query);
+	}
+	/**
+	 * Moves to the next assignment of the parents of var, the last parent changes fastest.
+	 * @param var
+	 * @param assignment index of the value of each parent
+	 * @return false if assignment was the last one
+	 */
+	private static boolean next(Variable var, int[] assignment) {
+		for (int p = assignment.length - 1; p >= 0; p--) {
+			if(++assignment[p] < var.parentAt(p).numOfValues())
+				return true;
+			assignment[p] = 0;
+		}
+		return false;
+	}
+
+	/**
+	 *
+	 * @param parents ids of the parents of each variable, all of them before it
+	 * @param card
+	 * @param random
+	 * @return the compiled network with random CPTs
+	 */
+	private static BayesianNetwork build(int[][] parents, int card, Random random) {
+		List<String> values = new ArrayList<>(card);
+		for (int val = 0; val < card; val++)
+			values.add("v" + val);
+		BayesianNetwork BNT = new BayesianNetwork();
+		List<Variable> vars = new ArrayList<>(parents.length);
+		for (int i = 0; i < parents.length; i++) {
+			Variable var = new Variable("X" + i);
+			var.AddValues(values);
+			List<Variable> varParents = new ArrayList<>(parents[i].length);
+			for (int p : parents[i])
+				varParents.add(vars.get(p));
+			var.AddParents(varParents.isEmpty()? null : varParents);
+			int numOfRows = 1;
+			for (int p = 0; p < parents[i].length; p++)
+				numOfRows *= card;
+			for (int row = 0; row < numOfRows; row++) {
+				//** Values of the parents of the row, the last parent changes fastest
+				String Evidence = "";
+				for (int p = 0, rest = row, stride = numOfRows / card; p < parents[i].length; p++, stride /= card) {
+					Evidence += values.get(rest / stride) + ",";
+					rest %= stride;
+				}
+				double[] probabilities = randomRow(card, random);
+				for (int val = 0; val < card; val++)
+					var.AddToCPT(Evidence + values.get(val), probabilities[val]);
+			}
+			vars.add(var);
+			BNT.AddVariable(var);
+		}
+		BNT.compile();
+		return BNT;
+	}
+	/**
+	 *
+	 * @param card
+	 * @param random
+	 * @return a distribution over card values, each probability positive and of 4 digits but the last one,
+	 * which is the rest up to 1 rounded as the input files do
+	 */
+	private static double[] randomRow(int card, Random random) {
+		double[] weights = new double[card];
+		double total = 0;
+		for (int val = 0; val < card; val++) {
+			weights[val] = 0.05 + random.nextDouble();
+			total += weights[val];
+		}
+		double[] ans = new double[card];
+		double sum = 0;
+		for (int val = 0; val < card - 1; val++) {
+			ans[val] = Math.max(1, Math.round(weights[val] / total * 10000.0)) / 10000.0;
+			sum += ans[val];
+		}
+		ans[card - 1] = Math.round((1 - sum) * 100000.0) / 100000.0;
+		return ans;
+	}
+	/**
+	 *
+	 * @param component union-find forest of the variables
+	 * @param v
+	 * @return the representative of the component of v
+	 */
+	private static int rootOf(int[] component, int v) {
+		while(component[v] != v) {
+			component[v] = component[component[v]];
+			v = component[v];
+		}
+		return v;
+	}
+	/**
+	 *
+	 * @param ids
+	 * @return the ids in increasing order
+	 */
+	private static int[] toSortedArray(List<Integer> ids) {
+		int[] ans = new int[ids.size()];
+		for (int i = 0; i < ans.length; i++)
+			ans[i] = ids.get(i);
+		Arrays.sort(ans);
+		return ans;
+	}
+
+	/**
+	 * Writes a synthetic network and random queries of it in the format of the input files.
+	 * @param args "-topology chain|polytree|grid|dag", "-nodes N" variables (a grid takes the nearest square),
+	 * "-in-degree N" most parents of a variable (polytree and dag), "-window N" variables before each one its
+	 * parents are taken from (dag, twice the in-degree by default), "-card N" values of every variable,
+	 * "-queries N" queries with "-evidence N" observed variables, of the types "-types 1,2,3" in turn,
+	 * "-seed S", and "-out FILE" ("-" or none for the standard output).
+	 * @throws IOException if the output file can not be opened
+	 */
+	public static void main(String[] args) throws IOException {
+		String topology = "dag", out = "-";
+		String[] types = {"1", "2", "3"};
+		int nodes = 1000, inDegree = 3, window = -1, card = 2, numOfQueries = 100, numOfEvidence = 5;
+		long seed = 1;
+		for (int i = 0; i + 1 < args.length; i++) {
+			if(args[i].equals("-topology"))
+				topology = args[++i];
+			else if(args[i].equals("-nodes"))
+				nodes = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-in-degree"))
+				inDegree = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-window"))
+				window = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-card"))
+				card = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-queries"))
+				numOfQueries = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-evidence"))
+				numOfEvidence = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-types"))
+				types = args[++i].split(",");
+			else if(args[i].equals("-seed"))
+				seed = Long.parseLong(args[++i]);
+			else if(args[i].equals("-out"))
+				out = args[++i];
+		}
+		BayesianNetwork network;
+		switch(topology) {
+		case "chain":
+			network = chain(nodes, card, seed);
+			break;
+		case "polytree":
+			network = polytree(nodes, inDegree, card, seed);
+			break;
+		case "grid":
+			int side = (int) Math.round(Math.sqrt(nodes));
+			network = grid(side, side, card, seed);
+			break;
+		case "dag":
+			network = randomDag(nodes, inDegree, window > 0? window : 2 * inDegree, card, seed);
+			break;
+		default:
+			System.err.println("Unknown topology " + topology + "! expected chain, polytree, grid or dag");
+			return;
+		}
+		List<Query> queries = randomQueries(network, numOfQueries, numOfEvidence, types, seed);
+		Writer writer = out.equals("-")? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+				: Files.newBufferedWriter(Paths.get(out), StandardCharsets.UTF_8);
+		try (PrintWriter printer = new PrintWriter(new BufferedWriter(writer))) {
+			write(network, queries, printer);
+			if(printer.checkError())
+				System.err.println("Could not write " + out);
+		}
+	}
+}
@@ -1,415 +1,646 @@
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
-
-public class Variable implements Comparable<Variable>{
-	
-	private String Name;
-	private List<String> Values;
-	private List<Variable> Parents;
-	private Map<String,Double> CPT;//** Hashed sequence of evidence
-	
-	
-	/* ***Constructors*** */
-	/**
-	 * Initializing only name with argument, the rest are empty
-	 * @param name
-	 */
-	public Variable(String name) {
-		Name = name;
-		Values = new ArrayList<>();
-		Parents = new ArrayList<>();
-		CPT = new TreeMap<>();
-	}
-	
-	/**
-	 * Deep copy constructors without copying CPT
-	 * @param var
-	 */
-	public Variable(String name,List<String> Values,List<Variable> Parents) {
-		this(name,Values,Parents,new TreeMap<>());
-	}
-	
-	/**
-	 * Deep copy constructors
-	 * @param var
-	 */
-	public Variable(Variable var) {
-		this(var.Name,var.Values,var.Parents,var.CPT);
-	}
-	
-	/**
-	 * Initializing all fields with arguments
-	 * @param name
-	 * @param Values
-	 * @param Parents
-	 * @param CPT
-	 */
-	public Variable(String name,List<String> Values,List<Variable> Parents,Map<String,Double> CPT) {
-		Name = new String(name);
-		this.Values = new ArrayList<>(Values);
-		this.Parents = Parents == null? null:new ArrayList<>(Parents);
-		this.CPT = new TreeMap<>(CPT);
-	}
-	
-	/* ***Methods*** */
-	/**
-	 * 
-	 * @return number of parents
-	 */
-	public int numOfParents() {
-		return (Parents == null)?0:Parents.size();
-	}
-	/**
-	 * 
-	 * @param parent
-	 * @return the index of given parent if exists, otherwise null
-	 */
-	public int indexOf(Variable parent) {
-		return (Parents == null)?0:Parents.indexOf(parent);
-	}
-	/**
-	 * 
-	 * @param i
-	 * @return parent at index i if exists, otherwise null
-	 */
-	public Variable parentAt(int i) {
-		return (Parents == null?null:new Variable(Parents.get(i)));
-	}
-	/**
-	 * 
-	 * @return name of variable
-	 */
-	public String getName() {
-		return Name;
-	}
-	/**
-	 * 
-	 * @return values
-	 */
-	public ArrayList<String> getValues(){
-		return new ArrayList<>(Values);
-	}
-	/**
-	 * 
-	 * @return parents
-	 */
-	public ArrayList<Variable> getParents(){
-		return (Parents!=null)? new ArrayList<>(Parents): null;
-	}
-	/**
-	 * 
-	 * @return all parents names
-	 */
-	private String parentsNames(){
-		String ans = new String("[");
-		for(Variable par:Parents)
-			ans += par.getName()+",";
-		ans = ans.substring(0, ans.length()-1) +"]";
-		return ans;
-	}
-	/**
-	 * 
-	 * @return conditional probability table (CPT)
-	 */
-	public TreeMap<String,Double> getCPT(){
-		return new TreeMap<>(CPT);
-	}
-
-	/**
-	 * Adds the value to variable's values
-	 * @param values
-	 */
-	public void AddValues(List<String> values) {
-		Values = new ArrayList<>(values.size());
-		for(String val:values) {
-			while(val.charAt(val.length()-1)==' ')
-				val = val.substring(0, val.length()-1);
-			while(val.charAt(0) == ' ')
-				val = val.substring(1);
-			Values.add(val);
-		}
-	}
-	/**
-	 * Adds the parents to variable's parents
-	 * @param parents
-	 */
-	public void AddParents(List<Variable> parents) {
-		Parents = (parents != null)? new ArrayList<>(parents):null;
-	}
-	/**
-	 * 
-	 * @return number of values
-	 */
-	int numOfValues() {
-		return this.Values.size();
-	}
-	/**
-	 * Adds the key and values to CPT
-	 * @param sequenceValues
-	 * @param probability
-	 */
-	public void AddToCPT(String sequenceValues,Double probability) {
-		while(sequenceValues.charAt(sequenceValues.length()-1)==' ')
-			sequenceValues = sequenceValues.substring(0, sequenceValues.length()-1);
-		while(sequenceValues.charAt(0)==' ')
-			sequenceValues = sequenceValues.substring(1);
-		CPT.put(sequenceValues, probability);
-	}
-	/**
-	 * 
-	 * @return depth of variable in network
-	 */
-	public int depth() {
-		if(Parents == null)
-			return 0;
-		int max = 0;
-		for(Variable par:Parents)
-			max = Math.max(max, par.depth()+1);
-		return max;
-	}
-	
-	/**
-	 * 
-	 * @param network
-	 * @param evidence
-	 * @param operationsC
-	 * @return the probability of given event for every variable. (All variables are observed).
-	 */
-	private static double CalculateProbForObservedNetwork(BayesianNetwork network,List<Variable> observedVar,List<String> evidence,int[] operationsC) {
-		double ans = 1;String eviOfVar = "";double prob=0;
-		for (int indexOfVar = 0; indexOfVar < network.size(); indexOfVar++) {
-			Variable var = network.varAt(indexOfVar);
-			if(var.Parents == null || var.Parents.isEmpty()) {
-				eviOfVar = evidence.get(observedVar.indexOf(var));
-				prob = var.CPT.get(eviOfVar);
-				operationsC[1]++;
-				ans*=prob;
-			}
-			else {
-				String conditionalProb = "";
-				for (int i = 0; i < var.Parents.size(); i++) {
-					Variable par = var.Parents.get(i);
-					String eviOfPar = evidence.get(observedVar.indexOf(par));
-					conditionalProb += eviOfPar +",";
-				}
-				eviOfVar = evidence.get(observedVar.indexOf(var));
-				conditionalProb += eviOfVar;
-				prob = var.CPT.get(conditionalProb);
-				operationsC[1]++;
-				ans *= prob;
-			}
-		}
-		return ans;
-	}
-	/**
-	 * 
-	 * @param network
-	 * @param obeservedVar
-	 * @param evidence
-	 * @param operationsC
-	 * @param i index of current variable in network
-	 * @param append if not observed, observe for each value, add to observedVar and evidence by append
-	 * @return observes every possible value for each hidden variable and summarize their probabilities.
-	 */
-	private static double ObserveHiddenVars(BayesianNetwork network,List<Variable> obeservedVar,
-			List<String> evidence,int[] operationsC,int i,int append) {
-		if(i==network.size()) {
-			operationsC[1]--;
-			return CalculateProbForObservedNetwork(network, obeservedVar, evidence, operationsC);
-		}
-		Variable var = network.varAt(i);
-		if(obeservedVar.contains(var)) {
-			return ObserveHiddenVars(network, obeservedVar, evidence, operationsC, i+1,append);
-		}
-		double sum = 0;
-		List<String> vals = var.Values;
-		operationsC[0] += var.numOfValues()-1;
-		obeservedVar.add(append,var);
-		for(String val : vals) {
-			evidence.add(append,val);
-			sum += ObserveHiddenVars(network, obeservedVar, evidence, operationsC, i+1,append+1);
-			evidence.remove(append);
-		}
-		obeservedVar.remove(append);
-		return sum;
-	}
-	/**
-	 * 
-	 * @param network
-	 * @param var query variable
-	 * @param obeservedVar observed variables
-	 * @param evidence evidence of observed variable
-	 * @param operationsC
-	 * @return probability of query using algorithm 1
-	 */
-	public static double probabilityOfNoFactoring(BayesianNetwork network,Variable var,List<Variable> obeservedVar,
-			List<String> evidence,int[] operationsC) {
-		double sumForVal = 0,sumForOther = 0;
-		sumForVal = ObserveHiddenVars(network, obeservedVar, evidence, operationsC, 0,obeservedVar.size());
-		String Value = evidence.remove(0);
-		for(String val:var.Values) {
-			if(!Value.equals(val)) {
-				evidence.add(0,val);
-				double tmp = ObserveHiddenVars(network, obeservedVar, evidence, operationsC, 0, obeservedVar.size());
-				sumForOther += tmp;
-				evidence.remove(0);
-			}
-		}
-		operationsC[0]++;
-		double alpha = 1.0/(sumForVal+sumForOther)*100000.0;
-		return Math.round(sumForVal*alpha)/100000.0;
-	}
-	
-/*	private double probOf(List<Variable> obeservedVar,List<String> evidence,int[] operationsC) {
-		double ans = 1;
-		String eviOfThis = evidence.get(obeservedVar.indexOf(this));
-		if(this.Parents == null)
-			ans = this.CPT.get(eviOfThis);
-		else {
-			String conditionEvi = "";
-			for (int i = 0; i < this.Parents.size(); i++) {
-				Variable par = this.Parents.get(i);
-				String eviOfPar = evidence.get(obeservedVar.indexOf(par));
-				conditionEvi += eviOfPar +",";
-			}
-			conditionEvi += eviOfThis;
-			ans = this.CPT.get(conditionEvi);
-		}
-		return ans;
-	}
-	
-	private static double ObserveHiddenVarsFac(BayesianNetwork network,List<Variable> obeservedVar,
-			List<String> evidence,int[] operationsC,int i,int append) {
-		if(i==network.size()) {
-			operationsC[1]--;
-			return 1;
-		}
-		Variable var = network.varAt(i);
-		if(obeservedVar.contains(var)) {
-			operationsC[1]++;
-			return var.probOf(obeservedVar, evidence, operationsC)*ObserveHiddenVarsFac(network, obeservedVar, evidence, operationsC, i+1,append);
-		}
-		double sum = 0;
-		List<String> vals = var.Values;
-		obeservedVar.add(append,var);
-		for(String val : vals) {
-			evidence.add(append,val);
-			sum += var.probOf(obeservedVar, evidence, operationsC)*ObserveHiddenVarsFac(network, obeservedVar, evidence, operationsC, i+1,append+1);
-			operationsC[1]++;
-			operationsC[0]++;
-			evidence.remove(append);
-		}
-		obeservedVar.remove(append);
-		operationsC[0]--;
-		return sum;
-	}	
-	
-	public static double probabilityWithFactoring(BayesianNetwork network,Variable var, String Value, List<Variable> obeservedVar,
-			List<String> evidence,int[] operationsC) {
-		obeservedVar.add(0, var);
-		evidence.add(0,Value);
-		BayesianNetwork tmpNetwork = network.eliminateVariables(var,obeservedVar);
-		double sumForVal = 0,sumForOther = 0;
-		sumForVal = ObserveHiddenVarsFac(tmpNetwork, obeservedVar, evidence, operationsC, 0,obeservedVar.size());
-		for(String val:var.Values) {
-			if(!Value.equals(val)) {
-				evidence.add(0,val);
-				double tmp = ObserveHiddenVarsFac(network, obeservedVar, evidence, operationsC, 0, obeservedVar.size());
-				sumForOther += tmp;
-				evidence.remove(0);
-			}
-		}
-		operationsC[0]++;
-		double alpha = 1.0/(sumForVal+sumForOther)*100000.0;
-		return Math.round(sumForVal*alpha)/100000.0;
-	}
-	*/
-	
-	/**
-	 * 
-	 * @param network
-	 * @param var
-	 * @param value
-	 * @param observedVar
-	 * @param evidence
-	 * @param operationsC
-	 * @return probability of query using algorithm 2
-	 */
-	public static double varEli(BayesianNetwork network,Variable var,String value, List<Variable> observedVar,
-			List<String> evidence,int[] operationsC) {
-		BayesianNetwork tmpNetwork = network.eliminateVariables(var,observedVar);
-		List<CPTX> listCPTX = new ArrayList<>();
-		listCPTX.add(CPTX.createForQueryVariable(var,observedVar,evidence));
-		for (int i = 0; i < tmpNetwork.size(); i++) {
-			Variable tmp = tmpNetwork.varAt(i);
-			if(!tmp.equals(var))
-				listCPTX.add(new CPTX(tmp,observedVar,evidence));
-		}
-		for (int i = listCPTX.size() - 1; i > 0; i--) {
-			CPTX F1 = listCPTX.remove(i),
-					F2 = listCPTX.remove(i-1),
-					F12 = F1.CartasianProduct(F2,operationsC);
-			if(i != 1)
-				F12.eliminateHidden(listCPTX,operationsC);
-			listCPTX.add( F12);
-		}
-		CPTX f = listCPTX.remove(0);
-		if(f.stillHiddenVariables()) {
-			f.eliminateOnOtherThan(var.getName(),operationsC);
-		}
-		Map<String, Double> cptOfQueryVar = f.getCptOfHidden();
-		double ans = cptOfQueryVar.get(value);
-		double sum = 0;
-		for(String val : var.Values) {
-				sum += cptOfQueryVar.get(val);
-		}
-		return Math.round(ans*100000.0/sum)/100000.0;
-	}
-	/**
-	 * 
-	 * @param network
-	 * @param var
-	 * @param value
-	 * @param observedVar
-	 * @param evidence
-	 * @param operationsC
-	 * @return probability of query using algorithm 3
-	 */
-	public static double bestOrderOfNetWork(BayesianNetwork network,Variable var,String value, List<Variable> observedVar,
-			List<String> evidence,int[] operationsC) {
-		BayesianNetwork tmpNetwork = network.bestOrderOfVars(var, observedVar);
-		return varEli(tmpNetwork, var, value, observedVar, evidence, operationsC);
-	}
-	
-
-	/**
-	 * @return if names are equal true, else false.
-	 */
-	@Override
-	public boolean equals(Object obj) {
-		if(obj instanceof Variable) {
-			return this.Name.equals(((Variable) obj).Name);
-		}
-		
-		return false;
-	}
-	/**
-	 * @return data of variable as String
-	 */
-	@Override
-	public String toString() {
-		String ans = "Name: "+this.Name +"\n Values: "+Arrays.toString(Values.toArray())+"\n Parents: ";
-		ans+=(Parents==null?null:parentsNames())+"\n CPT:\n: "+CPT;
-		return ans;
-	}
-	/**
-	 * @return compares the number of values.
-	 */
-	@Override
-	public int compareTo(Variable o) {
-		return o.numOfValues() - this.numOfValues();
-	}
-}
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class Variable implements Comparable<Variable>{
+	
+	private String Name;
+	private int Id;//** Index of the variable in the network that built it, -1 until added to a network
+	private List<String> Values;
+	private List<Variable> Parents;
+	private Map<String,Double> CPT;//** Hashed sequence of evidence
+	private boolean Frozen;//** Once frozen the variable can not be changed, so its views can be shared freely
+	private volatile CompiledNetwork CompiledCPT;//** Holds the CPT of a variable read from a network file, until CPT is needed
+	
+	
+	/* ***Constructors*** */
+	/**
+	 * Initializing only name with argument, the rest are empty
+	 * @param name
+	 */
+	public Variable(String name) {
+		Name = name;
+		Id = -1;
+		Values = new ArrayList<>();
+		Parents = new ArrayList<>();
+		CPT = new TreeMap<>();
+	}
+	
+	/**
+	 * Deep copy constructors without copying CPT
+	 * @param var
+	 */
+	public Variable(String name,List<String> Values,List<Variable> Parents) {
+		this(name,Values,Parents,new TreeMap<>());
+	}
+	
+	/**
+	 * Deep copy constructors
+	 * @param var
+	 */
+	public Variable(Variable var) {
+		this(var.Name,var.Values,var.Parents,var.cpt());
+		Id = var.Id;
+	}
+	
+	/**
+	 * Initializing all fields with arguments
+	 * @param name
+	 * @param Values
+	 * @param Parents
+	 * @param CPT
+	 */
+	public Variable(String name,List<String> Values,List<Variable> Parents,Map<String,Double> CPT) {
+		Name = new String(name);
+		Id = -1;
+		this.Values = new ArrayList<>(Values);
+		this.Parents = Parents == null? null:new ArrayList<>(Parents);
+		this.CPT = new TreeMap<>(CPT);
+	}
+	
+	/* ***Methods*** */
+	/**
+	 * 
+	 * @return number of parents
+	 */
+	public int numOfParents() {
+		return (Parents == null)?0:Parents.size();
+	}
+	/**
+	 * 
+	 * @param parent
+	 * @return the index of given parent if exists, otherwise null
+	 */
+	public int indexOf(Variable parent) {
+		return (Parents == null)?0:Parents.indexOf(parent);
+	}
+	/**
+	 * 
+	 * @param i
+	 * @return parent at index i if exists, otherwise null
+	 */
+	public Variable parentAt(int i) {
+		return (Parents == null?null:Parents.get(i));
+	}
+	/**
+	 * 
+	 * @return name of variable
+	 */
+	public String getName() {
+		return Name;
+	}
+	/**
+	 * 
+	 * @return id of variable, index in the network that built it
+	 */
+	public int getId() {
+		return Id;
+	}
+	/**
+	 * Sets the id, done once by the network the variable is first added to
+	 * @param id
+	 */
+	void setId(int id) {
+		Id = id;
+	}
+	/**
+	 * 
+	 * @return read-only view of the values
+	 */
+	public List<String> getValues(){
+		return Collections.unmodifiableList(Values);
+	}
+	/**
+	 * 
+	 * @return read-only view of the parents
+	 */
+	public List<Variable> getParents(){
+		return (Parents!=null)? Collections.unmodifiableList(Parents): null;
+	}
+	/**
+	 * 
+	 * @return all parents names
+	 */
+	private String parentsNames(){
+		String ans = new String("[");
+		for(Variable par:Parents)
+			ans += par.getName()+",";
+		ans = ans.substring(0, ans.length()-1) +"]";
+		return ans;
+	}
+	/**
+	 * 
+	 * @return read-only view of the conditional probability table (CPT)
+	 */
+	public Map<String,Double> getCPT(){
+		return Collections.unmodifiableMap(cpt());
+	}
+	/**
+	 * A variable read from a network file keeps its CPT in the compiled network only, the CPT is built from it
+	 * the first time it is needed.
+	 * @param model compiled network holding the CPT of the variable
+	 */
+	void setCompiledCPT(CompiledNetwork model) {
+		checkNotFrozen();
+		CompiledCPT = model;
+	}
+	/**
+	 * 
+	 * @return the CPT, built from the compiled network if the variable was read from a network file
+	 */
+	private Map<String,Double> cpt() {
+		CompiledNetwork model = CompiledCPT;
+		if(model != null) {
+			synchronized(this) {
+				if(CompiledCPT != null) {
+					Map<String,Double> ans = new TreeMap<>();
+					int[] family = new int[model.numOfParents(Id) + 1];
+					for (int p = 0; p < family.length - 1; p++)
+						family[p] = model.parentAt(Id, p);
+					family[family.length - 1] = Id;
+					for (int row = 0; row < model.cptSize(Id); row++) {
+						String key = "";
+						for (int i = family.length - 1, rest = row; i >= 0; i--) {
+							key = model.valueOf(family[i], rest % model.cardOf(family[i])) + (i == family.length - 1? "" : "," + key);
+							rest /= model.cardOf(family[i]);
+						}
+						ans.put(key, model.cptAt(Id, row));
+					}
+					CPT = ans;
+					CompiledCPT = null;
+				}
+			}
+		}
+		return CPT;
+	}
+	/**
+	 * Makes the variable unchangeable, done once the network is built.
+	 */
+	public void freeze() {
+		Frozen = true;
+	}
+	/**
+	 * 
+	 * @return true if the variable can not be changed anymore
+	 */
+	public boolean isFrozen() {
+		return Frozen;
+	}
+	/**
+	 * Throws if the variable is frozen
+	 */
+	private void checkNotFrozen() {
+		if(Frozen)
+			throw new IllegalStateException("Variable " + Name + " is frozen!");
+	}
+
+	/**
+	 * Adds the value to variable's values
+	 * @param values
+	 */
+	public void AddValues(List<String> values) {
+		checkNotFrozen();
+		Values = new ArrayList<>(values.size());
+		for(String val:values) {
+			while(val.charAt(val.length()-1)==' ')
+				val = val.substring(0, val.length()-1);
+			while(val.charAt(0) == ' ')
+				val = val.substring(1);
+			Values.add(val);
+		}
+	}
+	/**
+	 * Adds the parents to variable's parents
+	 * @param parents
+	 */
+	public void AddParents(List<Variable> parents) {
+		checkNotFrozen();
+		Parents = (parents != null)? new ArrayList<>(parents):null;
+	}
+	/**
+	 * 
+	 * @return number of values
+	 */
+	int numOfValues() {
+		return this.Values.size();
+	}
+	/**
+	 * Adds the key and values to CPT
+	 * @param sequenceValues
+	 * @param probability
+	 */
+	public void AddToCPT(String sequenceValues,Double probability) {
+		checkNotFrozen();
+		while(sequenceValues.charAt(sequenceValues.length()-1)==' ')
+			sequenceValues = sequenceValues.substring(0, sequenceValues.length()-1);
+		while(sequenceValues.charAt(0)==' ')
+			sequenceValues = sequenceValues.substring(1);
+		CPT.put(sequenceValues, probability);
+	}
+	/**
+	 * 
+	 * @return depth of variable in network
+	 */
+	public int depth() {
+		return depth(new HashMap<>());
+	}
+	/**
+	 * 
+	 * @param memo depths of the ancestors already computed
+	 * @return depth of variable in network
+	 */
+	private int depth(Map<Variable,Integer> memo) {
+		Integer ans = memo.get(this);
+		if(ans != null)
+			return ans;
+		int max = 0;
+		if(Parents != null)
+			for(Variable par:Parents)
+				max = Math.max(max, par.depth(memo)+1);
+		memo.put(this, max);
+		return max;
+	}
+	
+	/**
+	 * 
+	 * @param network
+	 * @param var query variable
+	 * @param obeservedVar observed variables, starting with the query variable
+	 * @param evidence evidence of observed variable, starting with the query value
+	 * @param operationsC
+	 * @return probability of query using algorithm 1
+	 */
+	public static double probabilityOfNoFactoring(BayesianNetwork network,Variable var,List<Variable> obeservedVar,
+			List<String> evidence,int[] operationsC) {
+		int Value = var.Values.indexOf(evidence.get(obeservedVar.indexOf(var)));
+		return normalizeOfNoFactoring(posteriorOfNoFactoring(network, var, obeservedVar, evidence, operationsC), Value);
+	}
+	/**
+	 * 
+	 * @param network
+	 * @param var query variable
+	 * @param obeservedVar observed variables, the query variable among them or not
+	 * @param evidence evidence of observed variable
+	 * @param operationsC
+	 * @return for each value of the query variable, the sum of the probabilities of every event with that
+	 * value and the evidence, using algorithm 1
+	 */
+	public static double[] posteriorOfNoFactoring(BayesianNetwork network,Variable var,List<Variable> obeservedVar,
+			List<String> evidence,int[] operationsC) {
+		QueryMetrics metrics = QueryMetrics.current();
+		long start = metrics == null? 0 : System.nanoTime();
+		Enumeration enumeration = new Enumeration(network, var.Id, network.evidenceOf(obeservedVar, evidence));
+		if(metrics != null) {
+			metrics.time(QueryMetrics.Phase.ORDERING, start);
+			start = System.nanoTime();
+		}
+		double[] ans = new double[var.numOfValues()];
+		//** Each sum comes with its own power of two (0 unless scaled), the largest one is divided out of all of them
+		int[] scales = new int[ans.length];
+		int maxScale = Integer.MIN_VALUE;
+		for(int val = 0; val < var.numOfValues(); val++) {
+			ans[val] = enumeration.sum(val);
+			scales[val] = enumeration.getScale();
+			if(ans[val] != 0)
+				maxScale = Math.max(maxScale, scales[val]);
+		}
+		for(int val = 0; val < ans.length; val++)
+			if(ans[val] != 0 && scales[val] != maxScale)
+				ans[val] = Math.scalb(ans[val], scales[val] - maxScale);
+		if(metrics != null) {
+			metrics.time(QueryMetrics.Phase.ENUMERATION, start);
+			metrics.held(enumeration.memoEntries());
+			//** The sums of the values are added up once more when normalizing
+			metrics.counted(enumeration.getAdditions() + ans.length - 1, enumeration.getMultiplications());
+		}
+		//** The answer reports the operations of the full enumeration, as the output format requires (the metrics
+		//** have the ones actually done): every assignment is a product over the network, and the products of
+		//** each value are added up, the sums of the values are added once more when normalizing
+		double numOfAssignments = enumeration.numOfAssignments();
+		operationsC[0] = saturatedAdd(operationsC[0], ans.length * (numOfAssignments - 1) + 1);
+		operationsC[1] = saturatedAdd(operationsC[1], ans.length * numOfAssignments * (network.size() - 1));
+		return ans;
+	}
+	/**
+	 * 
+	 * @param count
+	 * @param add
+	 * @return count + add, or Integer.MAX_VALUE if it does not fit
+	 */
+	private static int saturatedAdd(int count, double add) {
+		return (int) Math.min(Integer.MAX_VALUE, count + add);
+	}
+	/**
+	 * 
+	 * @param sums result of posteriorOfNoFactoring
+	 * @param Value index of the value of the query variable
+	 * @return the probability of Value rounded to 5 digits, normalized as algorithm 1 does
+	 */
+	public static double normalizeOfNoFactoring(double[] sums, int Value) {
+		double sumForVal = sums[Value],sumForOther = 0;
+		for(int val = 0; val < sums.length; val++) {
+			if(Value != val)
+				sumForOther += sums[val];
+		}
+		double alpha = 1.0/(sumForVal+sumForOther)*100000.0;
+		return Math.round(sumForVal*alpha)/100000.0;
+	}
+	
+	/**
+	 * 
+	 * @param network
+	 * @param var
+	 * @param value
+	 * @param observedVar
+	 * @param evidence
+	 * @param operationsC
+	 * @return probability of query using algorithm 2
+	 */
+	public static double varEli(BayesianNetwork network,Variable var,String value, List<Variable> observedVar,
+			List<String> evidence,int[] operationsC) {
+		return normalize(varEliPosterior(network, var, observedVar, evidence, operationsC), var.Values.indexOf(value));
+	}
+	/**
+	 * 
+	 * @param network
+	 * @param var
+	 * @param observedVar
+	 * @param evidence
+	 * @param operationsC
+	 * @return unnormalized distribution of the query variable using algorithm 2
+	 */
+	public static double[] varEliPosterior(BayesianNetwork network,Variable var, List<Variable> observedVar,
+			List<String> evidence,int[] operationsC) {
+		QueryMetrics metrics = QueryMetrics.current();
+		long start = metrics == null? 0 : System.nanoTime();
+		BayesianNetwork tmpNetwork = network.eliminateVariables(var,observedVar);
+		if(metrics != null)
+			metrics.time(QueryMetrics.Phase.PRUNING, start);
+		List<CPTX> listCPTX = createFactors(network.getModel(), tmpNetwork, var, network.evidenceOf(observedVar, evidence));
+		for (int i = listCPTX.size() - 1; i > 0; i--) {
+			CPTX F1 = listCPTX.remove(i),
+					F2 = listCPTX.remove(i-1),
+					F12 = F1.CartasianProduct(F2,operationsC);
+			if(metrics != null)
+				metrics.held(entriesOf(listCPTX) + F1.getTable().length + F2.getTable().length + F12.getTable().length);
+			if(i != 1)
+				F12.eliminateHidden(listCPTX,operationsC);
+			listCPTX.add( F12);
+		}
+		return posteriorOf(listCPTX.remove(0), var, operationsC);
+	}
+	/**
+	 * 
+	 * @param network
+	 * @param var
+	 * @param value
+	 * @param observedVar
+	 * @param evidence
+	 * @param heuristic chooses the next variable to eliminate
+	 * @param operationsC
+	 * @return probability of query using variable elimination on the pruned network, eliminating one hidden
+	 * variable at a time in the order given by heuristic on the moral graph
+	 */
+	public static double varEliByHeuristic(BayesianNetwork network,Variable var,String value, List<Variable> observedVar,
+			List<String> evidence,EliminationHeuristic heuristic,int[] operationsC) {
+		return normalize(varEliByHeuristicPosterior(network, var, observedVar, evidence, heuristic, operationsC),
+				var.Values.indexOf(value));
+	}
+	/**
+	 * 
+	 * @param network
+	 * @param var
+	 * @param observedVar
+	 * @param evidence
+	 * @param heuristic
+	 * @param operationsC
+	 * @return unnormalized distribution of the query variable using the elimination order of heuristic, in the
+	 * order of its values even if it is observed
+	 */
+	public static double[] varEliByHeuristicPosterior(BayesianNetwork network,Variable var, List<Variable> observedVar,
+			List<String> evidence,EliminationHeuristic heuristic,int[] operationsC) {
+		return varEliByHeuristicPosterior(network, var, observedVar, evidence, heuristic, null, operationsC);
+	}
+	/**
+	 * 
+	 * @param network
+	 * @param var
+	 * @param observedVar
+	 * @param evidence
+	 * @param heuristic
+	 * @param order ids of the hidden variables in the order heuristic eliminates them, if null it is chosen here
+	 * @param operationsC
+	 * @return unnormalized distribution of the query variable using the elimination order of heuristic, in the
+	 * order of its values even if it is observed
+	 */
+	public static double[] varEliByHeuristicPosterior(BayesianNetwork network,Variable var, List<Variable> observedVar,
+			List<String> evidence,EliminationHeuristic heuristic,List<Integer> order,int[] operationsC) {
+		QueryMetrics metrics = QueryMetrics.current();
+		long start = metrics == null? 0 : System.nanoTime();
+		BayesianNetwork tmpNetwork = network.prune(var,observedVar).getNetwork();
+		if(metrics != null)
+			metrics.time(QueryMetrics.Phase.PRUNING, start);
+		int[] evidenceById = network.evidenceOf(observedVar, evidence);
+		List<CPTX> listCPTX = createFactors(network.getModel(), tmpNetwork, var, evidenceById);
+		if(order == null) {
+			start = metrics == null? 0 : System.nanoTime();
+			order = new MoralGraph(tmpNetwork, evidenceById).eliminationOrder(heuristic, var.Id);
+			if(metrics != null)
+				metrics.time(QueryMetrics.Phase.ORDERING, start);
+		}
+		for(int hidden : order) {
+			CPTX product = null;
+			for (int i = 0; i < listCPTX.size();) {
+				if(listCPTX.get(i).containsHiddenVar(hidden)) {
+					CPTX f = listCPTX.remove(i);
+					product = product == null? f : product.CartasianProduct(f, operationsC);
+					if(metrics != null)
+						metrics.held(entriesOf(listCPTX) + product.getTable().length + f.getTable().length);
+				}
+				else
+					i++;
+			}
+			if(product != null) {
+				product.sumOut(hidden, operationsC);
+				listCPTX.add(product);
+			}
+		}
+		CPTX f = listCPTX.remove(0);
+		while(!listCPTX.isEmpty())
+			f = f.CartasianProduct(listCPTX.remove(0), operationsC);
+		double[] posterior = posteriorOf(f, var, operationsC);
+		int observed = evidenceById[var.Id];
+		if(observed == -1)
+			return posterior;
+		//** An observed query variable is reduced out of its CPTX, its whole mass goes to the observed value
+		double[] ans = new double[var.numOfValues()];
+		for(double prob : posterior)
+			ans[observed] += prob;
+		return ans;
+	}
+	/**
+	 * 
+	 * @param model
+	 * @param tmpNetwork variables taking part in the inference
+	 * @param var
+	 * @param evidence value of each observed variable by id, -1 if hidden
+	 * @return the CPTX of the query variable followed by the CPTX of every other variable of tmpNetwork
+	 */
+	private static List<CPTX> createFactors(CompiledNetwork model, BayesianNetwork tmpNetwork, Variable var,
+			int[] evidence) {
+		List<CPTX> listCPTX = new ArrayList<>();
+		listCPTX.add(FactorCache.factorOfQueryVariable(model,var.Id,evidence));
+		for (int i = 0; i < tmpNetwork.size(); i++) {
+			Variable tmp = tmpNetwork.varAt(i);
+			if(!tmp.equals(var))
+				listCPTX.add(FactorCache.factorOf(model,tmp.Id,evidence));
+		}
+		return listCPTX;
+	}
+	/**
+	 * 
+	 * @param factors
+	 * @return number of probabilities of all the CPTXs
+	 */
+	private static long entriesOf(List<CPTX> factors) {
+		long ans = 0;
+		for(CPTX f : factors)
+			ans += f.getTable().length;
+		return ans;
+	}
+	/**
+	 * 
+	 * @param f the last CPTX left, containing the query variable
+	 * @param var
+	 * @param operationsC
+	 * @return the unnormalized distribution of the query variable in f
+	 */
+	private static double[] posteriorOf(CPTX f, Variable var, int[] operationsC) {
+		if(f.stillHiddenVariables()) {
+			f.eliminateOnOtherThan(var.Id,operationsC);
+		}
+		return f.getTable().clone();
+	}
+	/**
+	 * 
+	 * @param cptOfQueryVar unnormalized distribution of the query variable
+	 * @param value index of the value of the query variable
+	 * @return the normalized probability of value, rounded to 5 digits
+	 */
+	public static double normalize(double[] cptOfQueryVar, int value) {
+		double ans = cptOfQueryVar[value];
+		double sum = 0;
+		for(double prob : cptOfQueryVar) {
+				sum += prob;
+		}
+		return Math.round(ans*100000.0/sum)/100000.0;
+	}
+	/**
+	 * 
+	 * @param network
+	 * @param var
+	 * @param value
+	 * @param observedVar
+	 * @param evidence
+	 * @param operationsC
+	 * @return probability of query using algorithm 3
+	 */
+	public static double bestOrderOfNetWork(BayesianNetwork network,Variable var,String value, List<Variable> observedVar,
+			List<String> evidence,int[] operationsC) {
+		BayesianNetwork tmpNetwork = network.bestOrderOfVars(var, observedVar);
+		return varEli(tmpNetwork, var, value, observedVar, evidence, operationsC);
+	}
+	/**
+	 * 
+	 * @param network
+	 * @param var
+	 * @param observedVar
+	 * @param evidence
+	 * @param operationsC
+	 * @return unnormalized distribution of the query variable using algorithm 3
+	 */
+	public static double[] bestOrderOfNetWorkPosterior(BayesianNetwork network,Variable var, List<Variable> observedVar,
+			List<String> evidence,int[] operationsC) {
+		QueryMetrics metrics = QueryMetrics.current();
+		long start = metrics == null? 0 : System.nanoTime();
+		BayesianNetwork tmpNetwork = network.bestOrderOfVars(var, observedVar);
+		if(metrics != null)
+			metrics.time(QueryMetrics.Phase.ORDERING, start);
+		return varEliPosterior(tmpNetwork, var, observedVar, evidence, operationsC);
+	}
+	/**
+	 * Answers the query from the junction tree of the network, which is built once for all of the queries.
+	 * @param network
+	 * @param var
+	 * @param value
+	 * @param observedVar
+	 * @param evidence
+	 * @param operationsC
+	 * @return the probability of value given the evidence, rounded to 5 digits
+	 */
+	public static double junctionTree(BayesianNetwork network,Variable var,String value, List<Variable> observedVar,
+			List<String> evidence,int[] operationsC) {
+		return normalize(junctionTreePosterior(network, var, observedVar, evidence, operationsC), var.Values.indexOf(value));
+	}
+	/**
+	 * 
+	 * @param network
+	 * @param var
+	 * @param observedVar
+	 * @param evidence
+	 * @param operationsC
+	 * @return unnormalized distribution of the query variable, from the junction tree calibrated for the evidence
+	 */
+	public static double[] junctionTreePosterior(BayesianNetwork network,Variable var, List<Variable> observedVar,
+			List<String> evidence,int[] operationsC) {
+		QueryMetrics metrics = QueryMetrics.current();
+		long start = metrics == null? 0 : System.nanoTime();
+		JunctionTree tree = network.getJunctionTree();
+		if(metrics != null)
+			metrics.time(QueryMetrics.Phase.ORDERING, start);
+		JunctionTree.Calibration calibration = tree.calibrate(network.evidenceOf(observedVar, evidence), operationsC);
+		return calibration.marginalOf(var.Id, operationsC);
+	}
+	
+
+	/**
+	 * @return if names are equal true, else false.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if(obj == this)
+			return true;
+		if(obj instanceof Variable) {
+			return this.Name.equals(((Variable) obj).Name);
+		}
+		
+		return false;
+	}
+	/**
+	 * @return hash code of the name, consistent with equals.
+	 */
+	@Override
+	public int hashCode() {
+		return this.Name.hashCode();
+	}
+	/**
+	 * @return data of variable as String
+	 */
+	@Override
+	public String toString() {
+		String ans = "Name: "+this.Name +"\n Values: "+Arrays.toString(Values.toArray())+"\n Parents: ";
+		ans+=(Parents==null?null:parentsNames())+"\n CPT:\n: "+cpt();
+		return ans;
+	}
+	/**
+	 * @return compares the number of values.
+	 */
+	@Override
+	public int compareTo(Variable o) {
+		return o.numOfValues() - this.numOfValues();
+	}
+}
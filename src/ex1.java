@@ -1,11 +1,154 @@
-
-public class ex1 {
-
-	public static void main(String[] args) {
-		// TODO Auto-generated method stub
-		InputFileProcessor IFP = new InputFileProcessor();
-		IFP.ProcessFile("input.txt");
-		IFP.processQueries();
-	}
-
-}
+import java.io.IOException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+public class ex1 {
+
+	/**
+	 * Answers the queries of input.txt into output.txt (or "-in FILE" into "-out FILE").
+	 * @param args optionally "-threads N" to answer the queries on N threads, and "-cache N" to keep the
+	 * posteriors of the last N distinct queries (the statistics of the cache are printed to the error stream).
+	 * "-stream" answers the queries while reading them, with at most "-window N" of them read ahead of the
+	 * written answers, from "-in FILE" into "-out FILE" ("-" for the standard input or output).
+	 * "-save-network FILE" writes the network of the input to a network file, and "-network FILE" reads the
+	 * network from a network file, the input then holds only the queries.
+	 * Queries of type 5 (likelihood weighting) and 6 (Gibbs sampling) draw "-samples N" samples, stop after
+	 * "-time-limit MS" milliseconds if given, start from "-seed S", and "-parallel-sampling" runs the chunks
+	 * of samples of each query on several threads.
+	 * "-factor-cache N" keeps the reduced CPTXs of at most N probabilities in all (none are kept by default, or
+	 * with 0) and prints the statistics of the cache to the error stream.
+	 * "-numeric scaled" keeps a power of two with the probabilities of the factors, so that the products of
+	 * large networks do not underflow, "-numeric plain" (the default) multiplies raw doubles.
+	 * "-metrics FILE" writes the metrics of every query to FILE as a line of JSON, and prints their totals to
+	 * the error stream.
+	 * Queries of type auto are answered by the algorithm the planner estimates the cheapest, and "-explain"
+	 * prints the plan of each one to the error stream, with the 95% confidence intervals of the estimates of
+	 * the queries of type 5 and 6 (which are also in their metrics).
+	 */
+	public static void main(String[] args) {
+		int threads = 1, cacheSize = 0, window = 0;
+		long samples = 100000, timeLimit = 0, seed = 1, factorCacheSize = -1;
+		boolean stream = false, parallelSampling = false, explain = false;
+		String in = "input.txt", out = "output.txt", network = null, saveNetwork = null, numeric = "plain", metrics = null;
+		for (int i = 0; i < args.length; i++) {
+			if(args[i].equals("-stream"))
+				stream = true;
+			else if(args[i].equals("-parallel-sampling"))
+				parallelSampling = true;
+			else if(args[i].equals("-explain"))
+				explain = true;
+			else if(i + 1 == args.length)
+				break;
+			else if(args[i].equals("-threads"))
+				threads = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-cache"))
+				cacheSize = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-window"))
+				window = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-in"))
+				in = args[++i];
+			else if(args[i].equals("-out"))
+				out = args[++i];
+			else if(args[i].equals("-network"))
+				network = args[++i];
+			else if(args[i].equals("-save-network"))
+				saveNetwork = args[++i];
+			else if(args[i].equals("-samples"))
+				samples = Long.parseLong(args[++i]);
+			else if(args[i].equals("-time-limit"))
+				timeLimit = Long.parseLong(args[++i]);
+			else if(args[i].equals("-seed"))
+				seed = Long.parseLong(args[++i]);
+			else if(args[i].equals("-factor-cache"))
+				factorCacheSize = Long.parseLong(args[++i]);
+			else if(args[i].equals("-numeric"))
+				numeric = args[++i];
+			else if(args[i].equals("-metrics"))
+				metrics = args[++i];
+		}
+		NumericMode mode = NumericMode.byName(numeric);
+		if(mode == null) {
+			System.err.println("Unknown numeric mode " + numeric + "! expected plain or scaled");
+			return;
+		}
+		NumericMode.setDefault(mode);
+		if(explain)
+			QueryPlanner.setExplain(System.err);
+		if(metrics != null) {
+			try {
+				MetricsRegistry.setDefault(new MetricsRegistry(new OutputStreamWriter(new FileOutputStream(metrics),
+						StandardCharsets.UTF_8)));
+			} catch (IOException e) {
+				System.err.println(e.getMessage());
+				return;
+			}
+		}
+		if(factorCacheSize != -1)
+			FactorCache.setDefault(factorCacheSize > 0? new FactorCache(factorCacheSize) : null);
+		Sampler.setDefault(new Sampler(samples, timeLimit, seed, parallelSampling));
+		InputFileProcessor IFP = new InputFileProcessor();
+		if(network != null) {
+			try {
+				IFP.setNetwork(NetworkFile.read(Paths.get(network)));
+			} catch (IOException e) {
+				System.err.println(e.getMessage());
+				return;
+			}
+		}
+		QueryCache cache = cacheSize > 0? new QueryCache(cacheSize) : null;
+		IFP.setQueryCache(cache);
+		ExecutorService executor = threads > 1? new ForkJoinPool(threads) : null;
+		if(stream)
+			stream(IFP, in, out, executor, window > 0? window : 4 * threads);
+		else if(IFP.ProcessFile(in))
+			IFP.processQueries(executor, out);
+		if(executor != null)
+			executor.shutdown();
+		if(saveNetwork != null && IFP.getNetwork() != null) {
+			try {
+				NetworkFile.write(IFP.getNetwork(), Paths.get(saveNetwork));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		if(cache != null)
+			System.err.println(cache);
+		if(factorCacheSize > 0)
+			System.err.println(FactorCache.getDefault());
+		MetricsRegistry registry = MetricsRegistry.getDefault();
+		if(registry != null) {
+			try {
+				registry.close();
+			} catch (IOException e) {
+				System.err.println(e.getMessage());
+			}
+			System.err.println(registry);
+		}
+	}
+	/**
+	 * Answers the queries of in while reading them.
+	 * @param IFP
+	 * @param in input file, "-" for the standard input
+	 * @param out output file, "-" for the standard output
+	 * @param executor
+	 * @param window
+	 */
+	private static void stream(InputFileProcessor IFP, String in, String out, ExecutorService executor, int window) {
+		try (Reader reader = in.equals("-")? new InputStreamReader(System.in, StandardCharsets.UTF_8) : new FileReader(in);
+				Writer writer = out.equals("-")? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+						: new OutputStreamWriter(new FileOutputStream(out), StandardCharsets.UTF_8)) {
+			IFP.processStream(reader, writer, executor, window);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}